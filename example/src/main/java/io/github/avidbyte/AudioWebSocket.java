@@ -3,15 +3,13 @@ package io.github.avidbyte;
 
 import io.github.avidbyte.annotation.*;
 import io.github.avidbyte.standard.Session;
+import io.github.avidbyte.standard.SessionRegistry;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.timeout.IdleStateEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * @author Aaron
  * @since 2022-10-21 10:15
@@ -21,10 +19,6 @@ import java.util.concurrent.ConcurrentHashMap;
 @ServerEndpoint("/chat/audio")
 public class AudioWebSocket {
 
-    private static int onlineCount = 0;
-    private static final Map<String, Session> CLIENTS = new ConcurrentHashMap<>();
-
-
     @BeforeHandshake
     public void handshake(Session session, HttpHeaders headers) {
         String token = headers.get("token");
@@ -32,25 +26,22 @@ public class AudioWebSocket {
     }
 
     @OnOpen
-    public void onOpen(@PathParam("connectName") String connectName, Session session) {
+    public void onOpen(@PathParam("connectName") String connectName, Session session, SessionRegistry sessions) {
         if (!StringUtils.hasLength(connectName)) {
             log.error("connectName is empty");
             return;
         }
         log.info("connectName={}", connectName);
-        addOnlineCount();
         session.setAttribute("name", connectName);
-        CLIENTS.put(connectName, session);
-        log.info("New connection, current number of connections = {}", onlineCount);
+        sessions.index(session, "connectName", connectName);
+        log.info("New connection, current number of connections = {}", sessions.size());
     }
 
     @OnClose
-    public void onClose(Session session){
+    public void onClose(Session session, SessionRegistry sessions){
         String name = session.getAttribute("name");
-        log.info("{}disconnected, current number of connections = {}", name, onlineCount);
-        CLIENTS.remove(name);
+        log.info("{}disconnected, current number of connections = {}", name, sessions.size() - 1);
         session.close();
-        subOnlineCount();
     }
 
     @OnBinary
@@ -82,21 +73,7 @@ public class AudioWebSocket {
     public void onError(Session session, Throwable error)  {
         String name = session.getAttribute("name");
         log.error("A communication error occurred and the connection was closed = {}", name);
-        CLIENTS.remove(name);
         session.close();
-        subOnlineCount();
-    }
-
-    public static synchronized int getOnlineCount() {
-        return onlineCount;
-    }
-
-    public static synchronized void addOnlineCount() {
-        AudioWebSocket.onlineCount++;
-    }
-
-    public static synchronized void subOnlineCount() {
-        AudioWebSocket.onlineCount--;
     }
 
 }
@@ -2,16 +2,16 @@ package io.github.avidbyte;
 
 
 import io.github.avidbyte.annotation.*;
+import io.github.avidbyte.autoconfigure.WebsocketServerBootStrap;
 import io.github.avidbyte.standard.Session;
+import io.github.avidbyte.standard.SessionRegistry;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.timeout.IdleStateEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * @author Aaron
  * @since 2022-10-21 10:15
@@ -20,7 +20,9 @@ import java.util.concurrent.ConcurrentHashMap;
 @Service
 @ServerEndpoint("/chat/text")
 public class TextWebSocket {
-    private static final Map<String, Session> CLIENTS = new ConcurrentHashMap<>();
+
+    @Autowired
+    private WebsocketServerBootStrap websocketServerBootStrap;
 
 
     @BeforeHandshake
@@ -30,20 +32,18 @@ public class TextWebSocket {
     }
 
     @OnOpen
-    public void onOpen(@PathParam("username") String username, Session session) {
+    public void onOpen(@PathParam("username") String username, Session session, SessionRegistry sessions) {
         if (!StringUtils.hasLength(username)) {
             log.error("username is empty");
             return;
         }
         log.info("username={}", username);
         session.setAttribute("name", username);
-        CLIENTS.put(username, session);
+        sessions.index(session, "username", username);
     }
 
     @OnClose
     public void onClose(Session session){
-        String name = session.getAttribute("name");
-        CLIENTS.remove(name);
         session.close();
     }
 
@@ -80,7 +80,6 @@ public class TextWebSocket {
     public void onError(Session session, Throwable error){
         String name = session.getAttribute("name");
         log.error("A communication error occurred and the connection was closed = {}", name);
-        CLIENTS.remove(name);
         session.close();
     }
 
@@ -88,10 +87,14 @@ public class TextWebSocket {
         session.sendText(message);
     }
 
-    public void sendMessageAll(String message) {
-        for (Session session : CLIENTS.values()) {
+    public void sendMessageTo(String message, String username) {
+        for (Session session : websocketServerBootStrap.getSessionRegistry(TextWebSocket.class).find("username", username)) {
             session.sendText(message);
         }
     }
 
+    public void sendMessageAll(String message) {
+        websocketServerBootStrap.getSessionRegistry(TextWebSocket.class).broadcastText(message, null);
+    }
+
 }
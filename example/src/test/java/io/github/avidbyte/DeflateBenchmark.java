@@ -0,0 +1,122 @@
+package io.github.avidbyte;
+
+import io.github.avidbyte.autoconfigure.NettyProperties;
+import io.github.avidbyte.standard.ServerEndpointConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import io.netty.util.CharsetUtil;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compresses JSON messages of typical sizes with the permessage-deflate encoder of netty, for every compression level
+ * with and without server context takeover, and reports the compressed size, the time per message and the compression
+ * state a connection keeps.
+ * <p>
+ * Each run sends a stream of snapshots of the same shape whose values change, as a feed would. With context takeover
+ * later messages refer back to earlier ones, without it every message is compressed on its own.
+ * <p>
+ * usage: DeflateBenchmark [messages]
+ */
+public class DeflateBenchmark {
+
+    /**
+     * objects per message, giving messages of about 170 bytes, 1 KB, 4 KB, 20 KB and 64 KB
+     */
+    private static final int[] OBJECTS = {1, 8, 32, 160, 512};
+
+    private static final int[] LEVELS = {1, 6, 9};
+
+    public static void main(String[] args) {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        for (boolean noContext : new boolean[]{false, true}) {
+            System.out.printf("server_no_context_takeover=%s, compression state kept per connection: %d KB%n",
+                    noContext, memoryPerConnection(noContext) / 1024);
+            for (int objects : OBJECTS) {
+                String[] payloads = snapshots(objects, 64);
+                for (int level : LEVELS) {
+                    // warm up
+                    run(level, noContext, payloads, messages);
+                    long[] result = run(level, noContext, payloads, messages);
+                    long plain = result[0];
+                    long compressed = result[1];
+                    long nanos = result[2];
+                    System.out.printf("  json=%6dB level=%d compressed=%6dB ratio=%5.1f%% ns/message=%8d MB/s=%7.1f%n",
+                            plain / messages, level, compressed / messages, 100.0 * compressed / plain,
+                            nanos / messages, plain / (nanos / 1e3));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return total bytes before and after compression and the nanoseconds spent
+     */
+    private static long[] run(int level, boolean noContext, String[] payloads, int messages) {
+        EmbeddedChannel channel = new EmbeddedChannel(new PerMessageDeflateServerExtensionHandshaker(level, false,
+                PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE, true, false)
+                .handshakeExtension(offer(noContext)).newExtensionEncoder());
+        long plain = 0;
+        long compressed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            ByteBuf content = Unpooled.copiedBuffer(payloads[i % payloads.length], CharsetUtil.UTF_8);
+            plain += content.readableBytes();
+            channel.writeOutbound(new TextWebSocketFrame(content));
+            WebSocketFrame frame = channel.readOutbound();
+            compressed += frame.content().readableBytes();
+            frame.release();
+        }
+        long nanos = System.nanoTime() - start;
+        channel.finishAndReleaseAll();
+        return new long[]{plain, compressed, nanos};
+    }
+
+    private static WebSocketExtensionData offer(boolean noContext) {
+        Map<String, String> parameters = new HashMap<>();
+        if (noContext) {
+            parameters.put("server_no_context_takeover", null);
+        }
+        return new WebSocketExtensionData("permessage-deflate", noContext ? parameters : Collections.emptyMap());
+    }
+
+    private static long memoryPerConnection(boolean serverNoContext) {
+        NettyProperties properties = new NettyProperties();
+        properties.setPort(80);
+        properties.setUseCompressionHandler(true);
+        properties.setCompressionServerNoContextTakeover(serverNoContext);
+        return new ServerEndpointConfig(properties).getCompressionMemoryPerConnection();
+    }
+
+    /**
+     * market data like snapshots: the same symbols and fields in every message, the numbers change
+     */
+    private static String[] snapshots(int objects, int count) {
+        Random random = new Random(objects);
+        String[] snapshots = new String[count];
+        for (int s = 0; s < count; s++) {
+            StringBuilder json = new StringBuilder("{\"type\":\"snapshot\",\"seq\":").append(s).append(",\"items\":[");
+            for (int i = 0; i < objects; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"symbol\":\"SYM").append(i).append("\",\"name\":\"Instrument number ").append(i)
+                        .append("\",\"bid\":").append(100 + random.nextInt(10000) / 100.0)
+                        .append(",\"ask\":").append(100 + random.nextInt(10000) / 100.0)
+                        .append(",\"volume\":").append(random.nextInt(1000000))
+                        .append(",\"updated\":").append(1700000000000L + random.nextInt(1000000))
+                        .append(",\"open\":").append(random.nextBoolean()).append('}');
+            }
+            snapshots[s] = json.append("]}").toString();
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.avidbyte;
+
+import io.github.avidbyte.annotation.OnBinary;
+import io.github.avidbyte.support.ByteMethodArgumentResolver;
+import io.github.avidbyte.support.MethodArgumentResolver;
+import io.github.avidbyte.support.PayloadMethodArgumentResolver;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.springframework.core.MethodParameter;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * Reports the bytes allocated per resolved {@code @OnBinary} parameter, for the copying {@code byte[]} resolver and
+ * the {@code ByteBuf}, {@code ByteBuffer} and {@code InputStream} views.
+ * <p>
+ * Needs a HotSpot based JVM for the per-thread allocation counter. Run with {@code -XX:-UseTLAB} for byte exact
+ * numbers, with TLABs the small allocations of the views may round to 0.
+ * <p>
+ * usage: PayloadAllocationBenchmark [iterations]
+ */
+public class PayloadAllocationBenchmark {
+
+    private static final int[] FRAME_SIZES = {1024, 16 * 1024, 256 * 1024};
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        MethodArgumentResolver bytes = new ByteMethodArgumentResolver();
+        MethodArgumentResolver payload = new PayloadMethodArgumentResolver();
+        Object[][] cases = {
+                {"byte[]", bytes, parameter("bytes", byte[].class)},
+                {"ByteBuf", payload, parameter("byteBuf", ByteBuf.class)},
+                {"ByteBuffer", payload, parameter("byteBuffer", ByteBuffer.class)},
+                {"InputStream", payload, parameter("inputStream", InputStream.class)},
+        };
+
+        for (int size : FRAME_SIZES) {
+            ByteBuf content = PooledByteBufAllocator.DEFAULT.directBuffer(size);
+            content.writerIndex(size);
+            BinaryWebSocketFrame frame = new BinaryWebSocketFrame(content);
+            try {
+                for (Object[] c : cases) {
+                    MethodArgumentResolver resolver = (MethodArgumentResolver) c[1];
+                    MethodParameter parameter = (MethodParameter) c[2];
+                    // warm up
+                    run(resolver, parameter, frame, iterations);
+                    long threadId = Thread.currentThread().getId();
+                    long before = threads.getThreadAllocatedBytes(threadId);
+                    long start = System.nanoTime();
+                    run(resolver, parameter, frame, iterations);
+                    long nanos = System.nanoTime() - start;
+                    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+                    System.out.printf("frame=%6d param=%-11s bytes/op=%8d ns/op=%6d MB/s allocated=%8.1f%n",
+                            size, c[0], allocated / iterations, nanos / iterations, allocated / (nanos / 1e3));
+                }
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    private static long run(MethodArgumentResolver resolver, MethodParameter parameter, BinaryWebSocketFrame frame, int iterations) throws Exception {
+        long blackhole = 0;
+        for (int i = 0; i < iterations; i++) {
+            blackhole += System.identityHashCode(resolver.resolveArgument(parameter, null, frame));
+        }
+        return blackhole;
+    }
+
+    private static MethodParameter parameter(String method, Class<?> type) throws NoSuchMethodException {
+        MethodParameter parameter = new MethodParameter(Endpoint.class.getMethod(method, type), 0);
+        if (!new PayloadMethodArgumentResolver().supportsParameter(parameter) && !new ByteMethodArgumentResolver().supportsParameter(parameter)) {
+            throw new IllegalStateException("unsupported parameter " + parameter);
+        }
+        return parameter;
+    }
+
+    public static class Endpoint {
+
+        @OnBinary
+        public void bytes(byte[] payload) {
+        }
+
+        @OnBinary
+        public void byteBuf(ByteBuf payload) {
+        }
+
+        @OnBinary
+        public void byteBuffer(ByteBuffer payload) {
+        }
+
+        @OnBinary
+        public void inputStream(InputStream payload) {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.avidbyte;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates a reconnect storm against a running server and reports accepted connections per second.
+ * <p>
+ * Start the example application once with {@code reuse-port-listeners: 1} and once with
+ * {@code reuse-port-listeners: N} (epoll transport) and compare the reported rates.
+ * <p>
+ * usage: ReconnectStormBenchmark [host] [port] [connections] [concurrency]
+ */
+public class ReconnectStormBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 80;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+        EventLoopGroup group = new NioEventLoopGroup();
+        try {
+            Bootstrap b = new Bootstrap();
+            b.group(group)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.SO_LINGER, 0)
+                    .handler(new ChannelInboundHandlerAdapter());
+
+            // warm up the server side accept path
+            run(b, host, port, Math.min(connections, 1000), concurrency);
+
+            long start = System.nanoTime();
+            int accepted = run(b, host, port, connections, concurrency);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("connections=%d accepted=%d failed=%d time=%.2fs accepts/s=%.0f%n",
+                    connections, accepted, connections - accepted, seconds, accepted / seconds);
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    private static int run(Bootstrap b, String host, int port, int connections, int concurrency) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(connections);
+        AtomicInteger accepted = new AtomicInteger();
+        for (int i = 0; i < connections; i++) {
+            inFlight.acquire();
+            ChannelFuture f = b.connect(host, port);
+            f.addListener((ChannelFuture future) -> {
+                if (future.isSuccess()) {
+                    accepted.incrementAndGet();
+                    future.channel().close();
+                }
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await(5, TimeUnit.MINUTES);
+        return accepted.get();
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.avidbyte;
+
+import io.github.avidbyte.support.AntPathMatcherWrapper;
+import io.github.avidbyte.support.PathRouter;
+import io.github.avidbyte.support.WsPathMatcher;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compares routing a handshake path through the compiled {@link PathRouter} with the linear scan over a
+ * {@code HashSet} of {@link AntPathMatcherWrapper}s it replaced, for a number of templated endpoints. Reports ns and
+ * bytes allocated per routed path, paths that hit the first, a middle and the last endpoint alternate.
+ * <p>
+ * Needs a HotSpot based JVM for the per-thread allocation counter.
+ * <p>
+ * usage: RouterBenchmark [endpoints] [iterations]
+ */
+public class RouterBenchmark {
+
+    public static void main(String[] args) {
+        int endpoints = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        PathRouter<Integer> router = new PathRouter<>();
+        Set<WsPathMatcher> matchers = new HashSet<>();
+        for (int i = 0; i < endpoints; i++) {
+            String pattern = "/api/v1/service" + i + "/{tenant}/rooms/{room}";
+            router.add(pattern, i);
+            matchers.add(new AntPathMatcherWrapper(pattern));
+        }
+        QueryStringDecoder[] paths = {
+                new QueryStringDecoder("/api/v1/service0/acme/rooms/42?token=abc"),
+                new QueryStringDecoder("/api/v1/service" + endpoints / 2 + "/acme/rooms/42?token=abc"),
+                new QueryStringDecoder("/api/v1/service" + (endpoints - 1) + "/acme/rooms/42?token=abc"),
+        };
+        for (QueryStringDecoder path : paths) {
+            // decode the path up front, the handler does so before routing too
+            path.path();
+        }
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        Runnable trie = () -> {
+            for (int i = 0; i < iterations; i++) {
+                if (router.match(paths[i % paths.length], channel) == null) {
+                    throw new IllegalStateException("no match");
+                }
+            }
+        };
+        Runnable scan = () -> {
+            for (int i = 0; i < iterations; i++) {
+                QueryStringDecoder path = paths[i % paths.length];
+                boolean matched = false;
+                for (WsPathMatcher matcher : matchers) {
+                    if (matcher.matchAndExtract(path, channel)) {
+                        matched = true;
+                        break;
+                    }
+                }
+                if (!matched) {
+                    throw new IllegalStateException("no match");
+                }
+            }
+        };
+
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up
+            boolean report = round == 1;
+            measure("PathRouter", trie, endpoints, iterations, report);
+            measure("AntPathMatcher scan", scan, endpoints, iterations, report);
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    private static void measure(String name, Runnable run, int endpoints, int iterations, boolean report) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        run.run();
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        if (report) {
+            System.out.printf("%-20s endpoints=%d ns/op=%7.1f bytes/op=%6d%n",
+                    name, endpoints, (double) nanos / iterations, allocated / iterations);
+        }
+    }
+}
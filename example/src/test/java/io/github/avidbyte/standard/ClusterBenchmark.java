@@ -0,0 +1,185 @@
+package io.github.avidbyte.standard;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts several nodes in one JVM, each with its own sessions on in-memory channels, connected by a
+ * {@link InMemoryClusterBus} or a {@link TcpClusterBus} over loopback, and measures how fast broadcasts and topic
+ * publishes of one node reach the sessions of all nodes, and how many messages each batch carried.
+ * <p>
+ * usage: ClusterBenchmark [nodes] [sessions per node] [messages] [linger millis]
+ */
+public class ClusterBenchmark {
+
+    private static final String ENDPOINT = "benchmark";
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int sessionsPerNode = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        long lingerMillis = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        EventLoopGroup group = new DefaultEventLoopGroup(4);
+        try {
+            for (boolean tcp : new boolean[]{false, true}) {
+                // warm up
+                run(group, tcp, nodeCount, sessionsPerNode, messages / 5, lingerMillis, false);
+                run(group, tcp, nodeCount, sessionsPerNode, messages, lingerMillis, true);
+            }
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    private static void run(EventLoopGroup group, boolean tcp, int nodeCount, int sessionsPerNode, int messages,
+                            long lingerMillis, boolean report) throws Exception {
+        AtomicLong delivered = new AtomicLong();
+        long expected = 2L * messages * nodeCount * sessionsPerNode;
+        CountDownLatch done = new CountDownLatch(1);
+        // counts what the sessions write rather than what the peers read, which a local channel delivers to another
+        // event loop with delays
+        ChannelOutboundHandlerAdapter counter = new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                ReferenceCountUtil.release(msg);
+                promise.trySuccess();
+                if (delivered.incrementAndGet() == expected) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public boolean isSharable() {
+                return true;
+            }
+        };
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                addresses.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+            }
+        }
+        String cluster = "benchmark-" + System.nanoTime();
+        List<Channel> channels = new ArrayList<>();
+        List<TcpClusterBus> tcpBuses = new ArrayList<>();
+        List<ClusterRelay> relays = new ArrayList<>();
+        List<SessionRegistry> sessionRegistries = new ArrayList<>();
+        List<TopicRegistry> topicRegistries = new ArrayList<>();
+        for (int n = 0; n < nodeCount; n++) {
+            ClusterBus bus;
+            if (tcp) {
+                List<InetSocketAddress> peers = new ArrayList<>(addresses);
+                peers.remove(n);
+                TcpClusterBus tcpBus = new TcpClusterBus(addresses.get(n), peers);
+                tcpBuses.add(tcpBus);
+                bus = tcpBus;
+            } else {
+                bus = new InMemoryClusterBus(cluster);
+            }
+            SessionRegistry sessionRegistry = new SessionRegistry();
+            TopicRegistry topicRegistry = new TopicRegistry();
+            ClusterRelay relay = new ClusterRelay(bus, 64 * 1024, lingerMillis);
+            relay.register(ENDPOINT, sessionRegistry, topicRegistry);
+            relay.start();
+            relays.add(relay);
+            sessionRegistries.add(sessionRegistry);
+            topicRegistries.add(topicRegistry);
+
+            List<Session> sessions = new ArrayList<>();
+            LocalAddress address = new LocalAddress(cluster + "-" + n);
+            channels.add(new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel ch) {
+                            ch.pipeline().addLast(counter);
+                            Session session = new Session(ch, topicRegistry);
+                            sessionRegistry.add(session);
+                            synchronized (sessions) {
+                                sessions.add(session);
+                            }
+                        }
+                    }).bind(address).sync().channel());
+            Bootstrap client = new Bootstrap().group(group).channel(LocalChannel.class).handler(new ChannelInitializer<LocalChannel>() {
+                @Override
+                protected void initChannel(LocalChannel ch) {
+                    // the tail of the pipeline releases what the client reads
+                }
+            });
+            for (int i = 0; i < sessionsPerNode; i++) {
+                channels.add(client.connect(address).sync().channel());
+            }
+            while (sessions.size() < sessionsPerNode) {
+                Thread.sleep(10);
+            }
+            // as in OnOpen, sessions subscribe once they are open
+            synchronized (sessions) {
+                for (Session session : sessions) {
+                    session.subscribe("feed.quotes");
+                }
+            }
+        }
+        awaitLoops(group);
+        for (TcpClusterBus tcpBus : tcpBuses) {
+            while (tcpBus.connectedPeers() < nodeCount - 1) {
+                Thread.sleep(10);
+            }
+        }
+
+        String message = "{\"type\":\"quote\",\"bid\":101.25,\"ask\":101.5}";
+        long start = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            sessionRegistries.get(0).broadcastText(message, null);
+            topicRegistries.get(0).publish("feed.quotes", message);
+        }
+        if (!done.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("delivered " + delivered.get() + " of " + expected);
+        }
+        long nanos = System.nanoTime() - start;
+        if (report) {
+            ClusterRelay sender = relays.get(0);
+            System.out.printf("%-9s nodes=%d sessions/node=%d messages=%d deliveries=%,d in %d ms, messages/s=%,.0f deliveries/s=%,.0f, messages/batch=%.1f%n",
+                    tcp ? "tcp" : "in-memory", nodeCount, sessionsPerNode, 2 * messages, expected, nanos / 1000000,
+                    2 * messages / (nanos / 1e9), expected / (nanos / 1e9), (double) sender.getMessagesSent() / sender.getBatchesSent());
+        }
+
+        for (ClusterRelay relay : relays) {
+            relay.close();
+        }
+        for (Channel channel : channels) {
+            channel.close().sync();
+        }
+    }
+
+    /**
+     * wait until every event loop has run the tasks submitted so far
+     */
+    private static void awaitLoops(EventLoopGroup group) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        group.forEach(loop -> futures.add(loop.submit(() -> { })));
+        for (Future<?> future : futures) {
+            future.await();
+        }
+    }
+}
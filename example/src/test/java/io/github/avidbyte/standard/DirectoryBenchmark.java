@@ -0,0 +1,219 @@
+package io.github.avidbyte.standard;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts several nodes in one JVM sharing an {@link InMemorySessionDirectory}, connected by an
+ * {@link InMemoryClusterBus} or a {@link TcpClusterBus} over loopback, binds every session to a key of its own and
+ * measures {@link SessionRegistry#sendTo(String, CharSequence)} from one node to random keys of all nodes: how fast the
+ * messages arrive and how many messages each node had to take from the bus, compared with a broadcast that every node
+ * filters. Then it moves keys to another node while the sender still caches their old owner, and checks that they are
+ * rerouted.
+ * <p>
+ * usage: DirectoryBenchmark [nodes] [sessions per node] [messages] [moved keys]
+ */
+public class DirectoryBenchmark {
+
+    private static final String ENDPOINT = "benchmark";
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int sessionsPerNode = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        int moved = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        EventLoopGroup group = new DefaultEventLoopGroup(4);
+        try {
+            for (boolean tcp : new boolean[]{false, true}) {
+                // warm up
+                run(group, tcp, nodeCount, sessionsPerNode, messages / 5, moved, false);
+                run(group, tcp, nodeCount, sessionsPerNode, messages, moved, true);
+            }
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    private static void run(EventLoopGroup group, boolean tcp, int nodeCount, int sessionsPerNode, int messages,
+                            int moved, boolean report) throws Exception {
+        AtomicLong delivered = new AtomicLong();
+        AtomicLong expected = new AtomicLong(messages);
+        CountDownLatch[] done = {new CountDownLatch(1)};
+        // counts what the sessions write rather than what the peers read, which a local channel delivers to another
+        // event loop with delays
+        ChannelOutboundHandlerAdapter counter = new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                ReferenceCountUtil.release(msg);
+                promise.trySuccess();
+                if (delivered.incrementAndGet() == expected.get()) {
+                    done[0].countDown();
+                }
+            }
+
+            @Override
+            public boolean isSharable() {
+                return true;
+            }
+        };
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                addresses.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+            }
+        }
+        String cluster = "directory-benchmark-" + System.nanoTime();
+        InMemorySessionDirectory directory = new InMemorySessionDirectory();
+        List<Channel> channels = new ArrayList<>();
+        List<TcpClusterBus> tcpBuses = new ArrayList<>();
+        List<ClusterRelay> relays = new ArrayList<>();
+        List<SessionRegistry> sessionRegistries = new ArrayList<>();
+        List<List<Session>> nodeSessions = new ArrayList<>();
+        for (int n = 0; n < nodeCount; n++) {
+            ClusterBus bus;
+            if (tcp) {
+                List<InetSocketAddress> peers = new ArrayList<>(addresses);
+                peers.remove(n);
+                TcpClusterBus tcpBus = new TcpClusterBus(addresses.get(n), peers);
+                tcpBuses.add(tcpBus);
+                bus = tcpBus;
+            } else {
+                bus = new InMemoryClusterBus(cluster);
+            }
+            SessionRegistry sessionRegistry = new SessionRegistry();
+            TopicRegistry topicRegistry = new TopicRegistry();
+            ClusterRelay relay = new ClusterRelay(bus, 64 * 1024, 1);
+            relay.useDirectory(directory, 10000, 60000);
+            relay.register(ENDPOINT, sessionRegistry, topicRegistry);
+            relay.start();
+            relays.add(relay);
+            sessionRegistries.add(sessionRegistry);
+
+            List<Session> sessions = new ArrayList<>();
+            nodeSessions.add(sessions);
+            LocalAddress address = new LocalAddress(cluster + "-" + n);
+            channels.add(new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel ch) {
+                            ch.pipeline().addLast(counter);
+                            Session session = new Session(ch, topicRegistry);
+                            sessionRegistry.add(session);
+                            synchronized (sessions) {
+                                sessions.add(session);
+                            }
+                        }
+                    }).bind(address).sync().channel());
+            Bootstrap client = new Bootstrap().group(group).channel(LocalChannel.class).handler(new ChannelInitializer<LocalChannel>() {
+                @Override
+                protected void initChannel(LocalChannel ch) {
+                    // the tail of the pipeline releases what the client reads
+                }
+            });
+            for (int i = 0; i < sessionsPerNode; i++) {
+                channels.add(client.connect(address).sync().channel());
+            }
+            while (sessions.size() < sessionsPerNode) {
+                Thread.sleep(10);
+            }
+            synchronized (sessions) {
+                for (int i = 0; i < sessionsPerNode; i++) {
+                    sessionRegistry.bindKey(sessions.get(i), key(n, i));
+                }
+            }
+        }
+        while (directory.size() < nodeCount * sessionsPerNode) {
+            Thread.sleep(10);
+        }
+        for (TcpClusterBus tcpBus : tcpBuses) {
+            while (tcpBus.connectedPeers() < nodeCount - 1) {
+                Thread.sleep(10);
+            }
+        }
+
+        Random random = new Random(42);
+        SessionRegistry senderRegistry = sessionRegistries.get(0);
+        String message = "{\"type\":\"notification\",\"text\":\"your order has shipped\"}";
+        long start = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            senderRegistry.sendTo(key(random.nextInt(nodeCount), random.nextInt(sessionsPerNode)), message);
+        }
+        await(done[0], delivered, expected.get());
+        long nanos = System.nanoTime() - start;
+        if (report) {
+            StringBuilder received = new StringBuilder();
+            for (int n = 1; n < nodeCount; n++) {
+                received.append(n == 1 ? "" : "/").append(relays.get(n).getMessagesReceived());
+            }
+            System.out.printf("%-9s nodes=%d sessions/node=%d sendTo=%,d in %d ms, messages/s=%,.0f, received by nodes 1..%d=%s (a filtered broadcast: %,d each), batches=%d%n",
+                    tcp ? "tcp" : "in-memory", nodeCount, sessionsPerNode, messages, nanos / 1000000,
+                    messages / (nanos / 1e9), nodeCount - 1, received, messages, relays.get(0).getBatchesSent());
+        }
+
+        // node 0 has cached the owners of the keys of node 1, which now move to node 2
+        if (nodeCount > 2) {
+            List<Session> from = nodeSessions.get(1);
+            List<Session> to = nodeSessions.get(2);
+            String toNode = relays.get(2).getNodeId();
+            for (int i = 0; i < moved && i < sessionsPerNode; i++) {
+                sessionRegistries.get(1).unbindKey(from.get(i));
+                sessionRegistries.get(2).bindKey(to.get(i), key(1, i));
+            }
+            for (int i = 0; i < moved && i < sessionsPerNode; i++) {
+                while (!toNode.equals(directory.lookup(key(1, i)))) {
+                    Thread.sleep(1);
+                }
+            }
+            delivered.set(0);
+            expected.set(Math.min(moved, sessionsPerNode));
+            done[0] = new CountDownLatch(1);
+            for (int i = 0; i < moved && i < sessionsPerNode; i++) {
+                senderRegistry.sendTo(key(1, i), message);
+            }
+            await(done[0], delivered, expected.get());
+            if (report) {
+                System.out.printf("%-9s moved %d keys from node 1 to node 2, all rerouted, unrouted=%d%n",
+                        tcp ? "tcp" : "in-memory", expected.get(), relays.get(1).getMessagesUnrouted());
+            }
+        }
+
+        for (ClusterRelay relay : relays) {
+            relay.close();
+        }
+        for (Channel channel : channels) {
+            channel.close().sync();
+        }
+    }
+
+    private static String key(int node, int session) {
+        return "user-" + node + "-" + session;
+    }
+
+    private static void await(CountDownLatch done, AtomicLong delivered, long expected) throws InterruptedException {
+        if (!done.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("delivered " + delivered.get() + " of " + expected);
+        }
+    }
+}
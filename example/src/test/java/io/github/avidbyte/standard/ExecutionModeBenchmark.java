@@ -0,0 +1,128 @@
+package io.github.avidbyte.standard;
+
+import io.github.avidbyte.util.VirtualThreadUtils;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures callback latency under blocking handlers for each execution mode. Sessions receive messages at a steady
+ * rate, and a share of the callbacks block, like a database or Redis lookup would. Latency runs from when a message is
+ * due to when its callback has finished, and p50, p99 and max are reported per mode:
+ * <ul>
+ * <li>event-loop: sessions pinned to one of the event loops, as when callbacks run on the I/O threads</li>
+ * <li>executor-group: sessions pinned to one thread of a {@link DefaultEventExecutorGroup}</li>
+ * <li>work-stealing: an {@link OrderedSessionExecutor} per session on a work-stealing pool</li>
+ * <li>virtual-threads: an {@link OrderedSessionExecutor} per session on virtual threads, needs JDK 21+</li>
+ * </ul>
+ * Callbacks of one session always run in order, the benchmark checks it.
+ * <p>
+ * usage: ExecutionModeBenchmark [sessions] [messages per session] [seconds] [blocking percent] [blocking millis] [executor threads]
+ */
+public class ExecutionModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int messagesPerSession = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int blockingPercent = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int blockingMillis = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        int executorThreads = args.length > 5 ? Integer.parseInt(args[5]) : 16;
+        int eventLoops = Runtime.getRuntime().availableProcessors() * 2;
+
+        DefaultEventLoopGroup eventLoopGroup = new DefaultEventLoopGroup(eventLoops);
+        DefaultEventExecutorGroup executorGroup = new DefaultEventExecutorGroup(executorThreads);
+        ForkJoinPool workStealingPool = OrderedSessionExecutor.newWorkStealingPool(executorThreads, "benchmark-executor");
+        try {
+            System.out.printf("sessions=%d messages=%d over %ds, %d%% of the callbacks block for %d ms, event loops=%d, executor threads=%d%n",
+                    sessions, sessions * messagesPerSession, seconds, blockingPercent, blockingMillis, eventLoops, executorThreads);
+            run("event-loop", pinned(eventLoopGroup, sessions), messagesPerSession, seconds, blockingPercent, blockingMillis);
+            run("executor-group", pinned(executorGroup, sessions), messagesPerSession, seconds, blockingPercent, blockingMillis);
+            run("work-stealing", ordered(workStealingPool, sessions), messagesPerSession, seconds, blockingPercent, blockingMillis);
+            if (VirtualThreadUtils.isAvailable()) {
+                run("virtual-threads", ordered(VirtualThreadUtils.executor(), sessions), messagesPerSession, seconds, blockingPercent, blockingMillis);
+            } else {
+                System.out.println("virtual-threads    not available on this JDK");
+            }
+        } finally {
+            eventLoopGroup.shutdownGracefully();
+            executorGroup.shutdownGracefully();
+            workStealingPool.shutdown();
+        }
+    }
+
+    /**
+     * as a pipeline does, every session keeps the executor it was given first
+     */
+    private static Executor[] pinned(EventExecutorGroup group, int sessions) {
+        Executor[] executors = new Executor[sessions];
+        for (int i = 0; i < sessions; i++) {
+            executors[i] = group.next();
+        }
+        return executors;
+    }
+
+    private static Executor[] ordered(Executor executor, int sessions) {
+        Executor[] executors = new Executor[sessions];
+        for (int i = 0; i < sessions; i++) {
+            executors[i] = new OrderedSessionExecutor(executor);
+        }
+        return executors;
+    }
+
+    private static void run(String mode, Executor[] executors, int messagesPerSession, int seconds,
+                            int blockingPercent, int blockingMillis) throws InterruptedException {
+        int sessions = executors.length;
+        int messages = sessions * messagesPerSession;
+        long[] latencies = new long[messages];
+        int[] nextSeq = new int[sessions];
+        boolean[] outOfOrder = new boolean[1];
+        CountDownLatch done = new CountDownLatch(messages);
+        Random random = new Random(42);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(seconds) / messages;
+        long start = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            int session = m % sessions;
+            int seq = m / sessions;
+            int index = m;
+            boolean blocking = random.nextInt(100) < blockingPercent;
+            long due = start + m * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            executors[session].execute(() -> {
+                // only this session's callbacks touch its slot, one at a time
+                if (nextSeq[session] != seq) {
+                    outOfOrder[0] = true;
+                }
+                nextSeq[session] = seq + 1;
+                if (blocking) {
+                    try {
+                        Thread.sleep(blockingMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                latencies[index] = System.nanoTime() - due;
+                done.countDown();
+            });
+        }
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException(mode + " did not finish");
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("%-18s p50=%8.2f ms p99=%8.2f ms max=%8.2f ms, finished after %.2f s%s%n", mode,
+                latencies[messages / 2] / 1e6, latencies[(int) (messages * 0.99)] / 1e6, latencies[messages - 1] / 1e6,
+                elapsed / 1e9, outOfOrder[0] ? ", OUT OF ORDER" : "");
+    }
+}
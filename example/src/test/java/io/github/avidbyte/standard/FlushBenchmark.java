@@ -0,0 +1,154 @@
+package io.github.avidbyte.standard;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends bursts of small text messages over loopback connections and counts the flushes that reach the socket, each of
+ * them is at least one write system call, for:
+ * <ul>
+ * <li>{@link Session#sendText(String)} per message</li>
+ * <li>{@link Session#writeText(String)} per message and one {@link Session#flush()} per burst</li>
+ * <li>{@link Session#sendText(String)} per message behind a {@code FlushConsolidationHandler}
+ * ({@code flush-consolidation-after-flushes})</li>
+ * </ul>
+ * each from the event loop and from an executor thread, as in the {@code executor-group} execution modes.
+ * <p>
+ * usage: FlushBenchmark [connections] [bursts per connection] [messages per burst] [message bytes]
+ */
+public class FlushBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int bursts = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int burstSize = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int messageBytes = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        StringBuilder message = new StringBuilder();
+        while (message.length() < messageBytes) {
+            message.append('x');
+        }
+
+        EventLoopGroup group = new NioEventLoopGroup(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (boolean fromExecutor : new boolean[]{false, true}) {
+                for (Mode mode : Mode.values()) {
+                    // warm up
+                    run(group, fromExecutor ? executor : null, mode, connections, bursts / 5, burstSize, message.toString(), false);
+                    run(group, fromExecutor ? executor : null, mode, connections, bursts, burstSize, message.toString(), true);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            group.shutdownGracefully();
+        }
+    }
+
+    private static void run(EventLoopGroup group, ExecutorService executor, Mode mode, int connections, int bursts,
+                            int burstSize, String message, boolean report) throws Exception {
+        AtomicLong flushes = new AtomicLong();
+        AtomicLong received = new AtomicLong();
+        long frameBytes = 2 + (message.length() < 126 ? 0 : 2) + message.length();
+        long expected = frameBytes * connections * bursts * burstSize;
+        CountDownLatch done = new CountDownLatch(1);
+        CountDownLatch accepted = new CountDownLatch(connections);
+        Session[] sessions = new Session[connections];
+        AtomicLong accepting = new AtomicLong();
+
+        Channel server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new ChannelOutboundHandlerAdapter() {
+                            @Override
+                            public void flush(ChannelHandlerContext ctx) {
+                                flushes.incrementAndGet();
+                                ctx.flush();
+                            }
+                        });
+                        if (mode == Mode.CONSOLIDATED) {
+                            ch.pipeline().addLast(new FlushConsolidationHandler(256, true));
+                        }
+                        ch.pipeline().addLast(new WebSocket13FrameEncoder(false));
+                        sessions[(int) accepting.getAndIncrement()] = new Session(ch);
+                        accepted.countDown();
+                    }
+                }).bind("127.0.0.1", 0).sync().channel();
+        Channel[] clients = new Channel[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new Bootstrap().group(group).channel(NioSocketChannel.class).handler(new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                    ByteBuf buf = (ByteBuf) msg;
+                    if (received.addAndGet(buf.readableBytes()) == expected) {
+                        done.countDown();
+                    }
+                    buf.release();
+                }
+            }).connect(server.localAddress()).sync().channel();
+        }
+        accepted.await();
+        flushes.set(0);
+
+        long start = System.nanoTime();
+        for (Session session : sessions) {
+            for (int b = 0; b < bursts; b++) {
+                Runnable burst = () -> {
+                    for (int m = 0; m < burstSize; m++) {
+                        if (mode == Mode.WRITE_FLUSH) {
+                            session.writeText(message);
+                        } else {
+                            session.sendText(message);
+                        }
+                    }
+                    if (mode == Mode.WRITE_FLUSH) {
+                        session.flush();
+                    }
+                };
+                if (executor != null) {
+                    executor.execute(burst);
+                } else {
+                    session.channel().eventLoop().execute(burst);
+                }
+            }
+        }
+        if (!done.await(120, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("received " + received.get() + " of " + expected + " bytes");
+        }
+        long nanos = System.nanoTime() - start;
+        long messages = (long) connections * bursts * burstSize;
+        if (report) {
+            System.out.printf("%-9s %-14s messages=%d flushes=%8d messages/flush=%6.1f messages/s=%,12.0f%n",
+                    executor == null ? "loop" : "executor", mode, messages, flushes.get(),
+                    (double) messages / flushes.get(), messages / (nanos / 1e9));
+        }
+
+        for (Channel client : clients) {
+            client.close().sync();
+        }
+        server.close().sync();
+    }
+
+    private enum Mode {
+        SEND, WRITE_FLUSH, CONSOLIDATED
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Connections holding partial messages in the aggregator must not stall every connection once they fill the budget,
+ * nor escape it with messages that never finish.
+ */
+class InboundMemoryBudgetTests {
+
+    private static final int LIMIT = 1000;
+
+    @Test
+    void partialMessagesWithinTheirShareKeepReading() {
+        InboundMemoryBudget budget = new InboundMemoryBudget(LIMIT, InboundMemoryBudget.Policy.OLDEST_FIRST);
+        List<EmbeddedChannel> partial = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            partial.add(connect(budget));
+        }
+        // a whole message held by its callback, the shares are a quarter of the budget
+        EmbeddedChannel holder = connect(budget, false);
+        for (EmbeddedChannel channel : partial) {
+            channel.writeInbound(new TextWebSocketFrame(false, 0, Unpooled.wrappedBuffer(new byte[240])));
+        }
+        holder.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[400])));
+        assertTrue(budget.getUsed() > LIMIT);
+        assertFalse(holder.config().isAutoRead());
+
+        for (EmbeddedChannel channel : partial) {
+            channel.writeInbound(new ContinuationWebSocketFrame(false, 0, Unpooled.wrappedBuffer(new byte[10])));
+            assertTrue(channel.config().isAutoRead());
+        }
+        for (EmbeddedChannel channel : partial) {
+            channel.writeInbound(new ContinuationWebSocketFrame(true, 0, Unpooled.wrappedBuffer(new byte[0])));
+        }
+        assertEquals(400, budget.getUsed());
+        assertEquals(0, budget.getSuspendedCount());
+        assertTrue(holder.config().isAutoRead());
+        for (EmbeddedChannel channel : partial) {
+            assertTrue(channel.config().isAutoRead());
+            channel.finishAndReleaseAll();
+        }
+        holder.finishAndReleaseAll();
+        assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    void unfinishedMessagePastItsShareIsSuspended() {
+        InboundMemoryBudget budget = new InboundMemoryBudget(LIMIT, InboundMemoryBudget.Policy.OLDEST_FIRST);
+        EmbeddedChannel idle = connect(budget);
+        EmbeddedChannel streaming = connect(budget);
+        streaming.writeInbound(new BinaryWebSocketFrame(false, 0, Unpooled.wrappedBuffer(new byte[100])));
+        // continuations that never finish the message, against an aggregator that allows far more
+        int frames = 1;
+        while (streaming.config().isAutoRead() && frames < 100) {
+            streaming.writeInbound(new ContinuationWebSocketFrame(false, 0, Unpooled.wrappedBuffer(new byte[100])));
+            frames++;
+        }
+        assertFalse(streaming.config().isAutoRead());
+        assertTrue(budget.getUsed() <= LIMIT + 100);
+        assertEquals(1, budget.getSuspendedCount());
+
+        // frames read before the suspension do not resume it
+        streaming.writeInbound(new ContinuationWebSocketFrame(false, 0, Unpooled.wrappedBuffer(new byte[100])));
+        assertFalse(streaming.config().isAutoRead());
+        assertTrue(idle.config().isAutoRead());
+
+        streaming.close();
+        assertEquals(0, budget.getUsed());
+        assertEquals(0, budget.getSuspendedCount());
+        idle.finishAndReleaseAll();
+    }
+
+    @Test
+    void suspendedConnectionStartingAMessageWithinItsShareIsResumed() {
+        InboundMemoryBudget budget = new InboundMemoryBudget(LIMIT, InboundMemoryBudget.Policy.OLDEST_FIRST);
+        EmbeddedChannel large = connect(budget, false);
+        EmbeddedChannel small = connect(budget, false);
+        large.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[800])));
+        small.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[300])));
+        assertTrue(large.config().isAutoRead());
+        assertFalse(small.config().isAutoRead());
+
+        // frames decoded from bytes read before the suspension still arrive
+        small.writeInbound(new TextWebSocketFrame(false, 0, Unpooled.wrappedBuffer(new byte[10])));
+        assertTrue(small.config().isAutoRead());
+        assertEquals(0, budget.getSuspendedCount());
+        small.writeInbound(new ContinuationWebSocketFrame(true, 0, Unpooled.wrappedBuffer(new byte[10])));
+        large.finishAndReleaseAll();
+        small.finishAndReleaseAll();
+        assertEquals(0, budget.getUsed());
+    }
+
+    private static EmbeddedChannel connect(InboundMemoryBudget budget) {
+        return connect(budget, true);
+    }
+
+    /**
+     * @param release whether messages are given back as soon as they are handled, else they stay held like a slow
+     *                callback would
+     */
+    private static EmbeddedChannel connect(InboundMemoryBudget budget, boolean release) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        InboundBudgetHandler handler = new InboundBudgetHandler(budget, channel, true);
+        channel.pipeline().addLast(handler, new WebSocketFrameAggregator(64 * 1024), new SimpleChannelInboundHandler<WebSocketFrame>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+                if (release) {
+                    handler.release(frame.content().readableBytes());
+                }
+            }
+        });
+        return channel;
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Measures a {@link MessageJournal} in a temporary directory: appends of text messages across rolling segments,
+ * reopening the journal, and replaying it to a session whose channel reads every page of what it is written, like a
+ * socket would. For the replay it also reports the heap the replaying thread allocated, which does not grow with the
+ * number of messages.
+ * <p>
+ * usage: JournalBenchmark [messages] [payload bytes] [segment MiB] [segments]
+ */
+public class JournalBenchmark {
+
+    /**
+     * keeps the page reads of the replay from being optimized away
+     */
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int payloadBytes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int segmentBytes = (args.length > 2 ? Integer.parseInt(args[2]) : 64) * 1024 * 1024;
+        int segments = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+        StringBuilder text = new StringBuilder("{\"type\":\"quote\",\"seq\":0,\"data\":\"");
+        while (text.length() < payloadBytes - 2) {
+            text.append('x');
+        }
+        String message = text.append("\"}").toString();
+
+        Path directory = Files.createTempDirectory("journal-benchmark");
+        try {
+            // warm up
+            run(directory.resolve("warm-up"), message, messages / 10, segmentBytes, segments, false);
+            run(directory.resolve("run"), message, messages, segmentBytes, segments, true);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(Path directory, String message, int messages, int segmentBytes, int segments,
+                            boolean report) throws IOException {
+        MessageJournal journal = new MessageJournal(directory, segmentBytes, segments);
+        long start = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            journal.appendText(message);
+        }
+        long appendNanos = System.nanoTime() - start;
+        ByteBuf last = journal.read(journal.lastSeq());
+        journal.close();
+
+        start = System.nanoTime();
+        journal = new MessageJournal(directory, segmentBytes, segments);
+        long openNanos = System.nanoTime() - start;
+
+        long[] written = new long[1];
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                ByteBuf buf = (ByteBuf) msg;
+                long sum = 0;
+                for (int i = buf.readerIndex(); i < buf.writerIndex(); i += 4096) {
+                    sum += buf.getByte(i);
+                }
+                sink += sum;
+                written[0] += buf.readableBytes();
+                ReferenceCountUtil.release(msg);
+                promise.trySuccess();
+            }
+        });
+        Session session = new Session(channel);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long[] replayed = new long[2];
+        long[] allocated = new long[2];
+        long[] replayNanos = new long[2];
+        long bytes = 0;
+        long[] afterSeqs = {journal.firstSeq() - 1, journal.lastSeq() - 1000};
+        for (int i = 0; i < afterSeqs.length; i++) {
+            written[0] = 0;
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            start = System.nanoTime();
+            long lastSeq = journal.replay(session, afterSeqs[i]);
+            replayNanos[i] = System.nanoTime() - start;
+            allocated[i] = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+            replayed[i] = lastSeq - afterSeqs[i];
+            if (i == 0) {
+                bytes = written[0];
+            }
+        }
+        long kept = journal.lastSeq() - journal.firstSeq() + 1;
+        journal.close();
+        channel.finishAndReleaseAll();
+
+        if (report) {
+            int frameBytes = last.readableBytes();
+            System.out.printf("append   messages=%,d frame=%d bytes in %d ms, messages/s=%,.0f MB/s=%,.0f, segments of %d MiB, kept %,d messages%n",
+                    messages, frameBytes, appendNanos / 1000000, messages / (appendNanos / 1e9),
+                    (double) messages * frameBytes / 1e6 / (appendNanos / 1e9), segmentBytes / 1024 / 1024, kept);
+            System.out.printf("reopen   %.1f ms%n", openNanos / 1e6);
+            System.out.printf("replay   all %,d messages (%,d MB) in %.1f ms, messages/s=%,.0f MB/s=%,.0f, heap allocated=%,d bytes%n",
+                    replayed[0], bytes / 1000000, replayNanos[0] / 1e6, replayed[0] / (replayNanos[0] / 1e9),
+                    bytes / 1e6 / (replayNanos[0] / 1e9), allocated[0]);
+            System.out.printf("replay   last %,d messages in %.3f ms, heap allocated=%,d bytes%n",
+                    replayed[1], replayNanos[1] / 1e6, allocated[1]);
+        }
+    }
+}
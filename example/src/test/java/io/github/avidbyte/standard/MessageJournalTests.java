@@ -0,0 +1,136 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Segments roll and are dropped past the limit, and a reopened journal continues after its last complete message.
+ */
+class MessageJournalTests {
+
+    private static final int SEGMENT_BYTES = 1024;
+
+    /**
+     * a binary frame of this payload takes 102 bytes, ten fill a segment
+     */
+    private static final int PAYLOAD = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendsRollIntoSegmentsThatSurviveAReopen() throws IOException {
+        try (MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 3)) {
+            for (int i = 1; i <= 25; i++) {
+                assertEquals(i, journal.appendBinary(payload(i)));
+            }
+            assertEquals(3, segmentFiles());
+        }
+        try (MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 3)) {
+            assertEquals(1, journal.firstSeq());
+            assertEquals(25, journal.lastSeq());
+            assertEquals(5, payloadOf(journal.read(5)));
+            assertEquals(25, payloadOf(journal.read(25)));
+            assertEquals(26, journal.appendBinary(payload(26)));
+            assertEquals(26, payloadOf(journal.read(26)));
+        }
+    }
+
+    @Test
+    void replayPastADroppedSegmentAsksForAResync() throws IOException {
+        try (MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 2)) {
+            for (int i = 1; i <= 35; i++) {
+                journal.appendBinary(payload(i));
+            }
+            assertEquals(21, journal.firstSeq());
+            assertNull(journal.read(20));
+
+            EmbeddedChannel channel = new EmbeddedChannel();
+            Session session = new Session(channel);
+            assertEquals(-1, journal.replay(session, 5));
+            assertEquals(-1, journal.replay(session, 19));
+            assertEquals(35, journal.replay(session, 35));
+            assertEquals(35, journal.replay(session, 20));
+            int written = 0;
+            for (ByteBuf frames; (frames = channel.readOutbound()) != null; ) {
+                written += frames.readableBytes();
+                frames.release();
+            }
+            assertEquals(15 * (PAYLOAD + 2), written);
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void tornLastWriteIsIgnored() throws IOException {
+        try (MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 3)) {
+            for (int i = 1; i <= 5; i++) {
+                journal.appendBinary(payload(i));
+            }
+        }
+        // the frame of message 5 reached the data file, its index entry did not
+        try (RandomAccessFile index = new RandomAccessFile(directory.resolve(String.format("%020d.idx", 1)).toFile(), "rw")) {
+            index.seek(4 * 4);
+            index.writeInt(0);
+        }
+        try (MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 3)) {
+            assertEquals(4, journal.lastSeq());
+            assertNull(journal.read(5));
+            assertEquals(5, journal.appendBinary(payload(50)));
+            assertEquals(50, payloadOf(journal.read(5)));
+            assertEquals(4, payloadOf(journal.read(4)));
+        }
+    }
+
+    @Test
+    void reopeningWithFewerSegmentsDeletesTheOldest() throws IOException {
+        try (MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 4)) {
+            for (int i = 1; i <= 35; i++) {
+                journal.appendBinary(payload(i));
+            }
+        }
+        try (MessageJournal journal = new MessageJournal(directory, SEGMENT_BYTES, 2)) {
+            assertEquals(2, segmentFiles());
+            assertEquals(21, journal.firstSeq());
+            assertEquals(35, journal.lastSeq());
+        }
+    }
+
+    /**
+     * @return a payload whose first byte tells it apart
+     */
+    private static byte[] payload(int mark) {
+        byte[] payload = new byte[PAYLOAD];
+        payload[0] = (byte) mark;
+        return payload;
+    }
+
+    /**
+     * @param frame a binary frame of {@link #payload(int)}
+     */
+    private static int payloadOf(ByteBuf frame) {
+        assertEquals(PAYLOAD + 2, frame.readableBytes());
+        return frame.getByte(2);
+    }
+
+    private long segmentFiles() throws IOException {
+        long count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.log")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
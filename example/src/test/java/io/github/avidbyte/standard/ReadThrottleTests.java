@@ -0,0 +1,57 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sources of backpressure suspend reading independently, whatever order their updates run in.
+ */
+class ReadThrottleTests {
+
+    @Test
+    void readingResumesWhenEverySourceHasResumed() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicBoolean budget = new AtomicBoolean(true);
+        AtomicBoolean queue = new AtomicBoolean(true);
+        ReadThrottle.update(channel, ReadThrottle.Source.MEMORY_BUDGET, budget);
+        ReadThrottle.update(channel, ReadThrottle.Source.TASK_QUEUE, queue);
+        // a repeated update changes nothing
+        ReadThrottle.update(channel, ReadThrottle.Source.TASK_QUEUE, queue);
+        assertFalse(channel.config().isAutoRead());
+
+        queue.set(false);
+        ReadThrottle.update(channel, ReadThrottle.Source.TASK_QUEUE, queue);
+        assertFalse(channel.config().isAutoRead());
+        budget.set(false);
+        ReadThrottle.update(channel, ReadThrottle.Source.MEMORY_BUDGET, budget);
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void staleUpdateOfOneSourceKeepsTheOtherSuspended() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicBoolean budget = new AtomicBoolean();
+        AtomicBoolean queue = new AtomicBoolean();
+        // the queue suspended and resumed on other threads, both updates were posted and run after its resume
+        queue.set(true);
+        queue.set(false);
+        ReadThrottle.update(channel, ReadThrottle.Source.TASK_QUEUE, queue);
+        assertTrue(channel.config().isAutoRead());
+
+        budget.set(true);
+        ReadThrottle.update(channel, ReadThrottle.Source.MEMORY_BUDGET, budget);
+        ReadThrottle.update(channel, ReadThrottle.Source.TASK_QUEUE, queue);
+        assertFalse(channel.config().isAutoRead());
+
+        budget.set(false);
+        ReadThrottle.update(channel, ReadThrottle.Source.MEMORY_BUDGET, budget);
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+}
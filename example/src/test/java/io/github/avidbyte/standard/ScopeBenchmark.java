@@ -0,0 +1,114 @@
+package io.github.avidbyte.standard;
+
+import io.github.avidbyte.annotation.EndpointScope;
+import io.github.avidbyte.annotation.OnMessage;
+import io.github.avidbyte.annotation.OnOpen;
+import io.github.avidbyte.annotation.ServerEndpoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures what each {@link EndpointScope} costs a handshake: obtaining the endpoint instance for a new connection and
+ * releasing it when the connection closes, as {@link WebSocketEventServer} does, compared with the reflective
+ * construction and autowiring every handshake did before the scopes. Reports ns and bytes allocated per connection,
+ * and the connections per second a single thread could open at that cost.
+ * <p>
+ * Needs a HotSpot based JVM for the per-thread allocation counter.
+ * <p>
+ * usage: ScopeBenchmark [connections]
+ */
+public class ScopeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.register(Counter.class, SingletonEndpoint.class, PooledEndpoint.class, PrototypeEndpoint.class);
+        context.refresh();
+        AbstractBeanFactory beanFactory = (AbstractBeanFactory) context.getBeanFactory();
+        try {
+            MethodMapping singleton = new MethodMapping(SingletonEndpoint.class, context, beanFactory);
+            MethodMapping pooled = new MethodMapping(PooledEndpoint.class, context, beanFactory);
+            MethodMapping prototype = new MethodMapping(PrototypeEndpoint.class, context, beanFactory);
+            for (int round = 0; round < 2; round++) {
+                // the first round warms up
+                boolean report = round == 1;
+                measure("before scopes", () -> {
+                    // what getEndpointInstance did on every handshake
+                    Object implement = PrototypeEndpoint.class.getDeclaredConstructor().newInstance();
+                    context.getBean(AutowiredAnnotationBeanPostProcessor.class).postProcessPropertyValues(null, null, implement, null);
+                    return implement;
+                }, implement -> { }, connections, report);
+                measure("PROTOTYPE", prototype::getEndpointInstance, prototype::releaseEndpointInstance, connections, report);
+                measure("POOLED", pooled::getEndpointInstance, pooled::releaseEndpointInstance, connections, report);
+                measure("SINGLETON", singleton::getEndpointInstance, singleton::releaseEndpointInstance, connections, report);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void measure(String name, Acquire acquire, Release release, int connections, boolean report) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long blackhole = 0;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            Object implement = acquire.get();
+            blackhole += System.identityHashCode(implement);
+            release.accept(implement);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        if (report) {
+            System.out.printf("%-13s ns/connection=%7.1f bytes/connection=%5d connections/s=%,12.0f (%d)%n",
+                    name, (double) nanos / connections, allocated / connections, connections / (nanos / 1e9), blackhole & 1);
+        }
+    }
+
+    private interface Acquire {
+        Object get() throws Exception;
+    }
+
+    private interface Release {
+        void accept(Object implement);
+    }
+
+    public static class Counter {
+        final AtomicLong messages = new AtomicLong();
+    }
+
+    public abstract static class Endpoint {
+
+        @Autowired
+        private Counter counter;
+
+        @OnOpen
+        public void onOpen(Session session) {
+            counter.messages.incrementAndGet();
+        }
+
+        @OnMessage
+        public void onMessage(Session session, String message) {
+            counter.messages.incrementAndGet();
+        }
+    }
+
+    @ServerEndpoint(value = "/singleton", scope = EndpointScope.SINGLETON)
+    public static class SingletonEndpoint extends Endpoint {
+    }
+
+    @ServerEndpoint(value = "/pooled", scope = EndpointScope.POOLED)
+    public static class PooledEndpoint extends Endpoint {
+    }
+
+    @ServerEndpoint(value = "/prototype")
+    public static class PrototypeEndpoint extends Endpoint {
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelId;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalChannel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures {@link SessionRegistry} with all cores adding, looking up, indexing and churning sessions concurrently.
+ * Churning the per event loop shards alone shows what the registry's global map adds to every add and remove.
+ * <p>
+ * Sessions are backed by unconnected local channels spread over as many event loops as there are cores, 1M of them
+ * need a heap of about 4g: {@code -Xmx4g}.
+ * <p>
+ * usage: SessionRegistryBenchmark [sessions] [threads]
+ */
+public class SessionRegistryBenchmark {
+
+    private static final String INDEX = "userId";
+
+    /**
+     * sessions per user
+     */
+    private static final int SESSIONS_PER_KEY = 4;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        EventLoopGroup loops = new DefaultEventLoopGroup(threads);
+        try {
+            Session[] sessions = new Session[count];
+            ChannelId[] ids = new ChannelId[count];
+            for (int i = 0; i < count; i++) {
+                Channel channel = new LocalChannel();
+                loops.register(channel).sync();
+                sessions[i] = new Session(channel);
+                ids[i] = channel.id();
+            }
+            System.out.printf("sessions=%d threads=%d event-loops=%d%n", count, threads, threads);
+
+            SessionRegistry registry = new SessionRegistry();
+            run("add", threads, count, (i, random) -> registry.add(sessions[i]));
+            run("index", threads, count, (i, random) -> registry.index(sessions[i], INDEX, i / SESSIONS_PER_KEY));
+            run("get(ChannelId)", threads, count, (i, random) -> check(registry.get(ids[random.nextInt(count)])));
+            run("find(index, key)", threads, count, (i, random) -> check(registry.findOne(INDEX, random.nextInt(count / SESSIONS_PER_KEY))));
+            // close and reopen random sessions, with their index entry, while the others are looked up
+            run("churn remove+add+index", threads, count, (i, random) -> {
+                int n = random.nextInt(count);
+                registry.remove(sessions[n]);
+                registry.add(sessions[n]);
+                registry.index(sessions[n], INDEX, n / SESSIONS_PER_KEY);
+            });
+            // what the global map of ChannelId and index lookups costs on top of the per event loop shards alone
+            Map<EventLoop, Map<ChannelId, Session>> shardsOnly = new ConcurrentHashMap<>();
+            for (Session session : sessions) {
+                shardsOnly.computeIfAbsent(session.channel().eventLoop(), loop -> new ConcurrentHashMap<>()).put(session.id(), session);
+            }
+            run("churn shards only", threads, count, (i, random) -> {
+                Session session = sessions[random.nextInt(count)];
+                Map<ChannelId, Session> shard = shardsOnly.get(session.channel().eventLoop());
+                shard.remove(session.id());
+                shard.put(session.id(), session);
+            });
+            run("churn remove+add", threads, count, (i, random) -> {
+                int n = random.nextInt(count);
+                registry.remove(sessions[n]);
+                registry.add(sessions[n]);
+            });
+            run("get under churn", threads, count, (i, random) -> {
+                if ((i & 7) == 0) {
+                    int n = random.nextInt(count);
+                    registry.remove(sessions[n]);
+                    registry.add(sessions[n]);
+                } else {
+                    registry.get(ids[random.nextInt(count)]);
+                }
+            });
+            System.out.printf("size=%d%n", registry.size());
+        } finally {
+            loops.shutdownGracefully();
+        }
+    }
+
+    private static void check(Session session) {
+        if (session == null) {
+            throw new IllegalStateException("session not found");
+        }
+    }
+
+    private static void run(String name, int threads, int count, Operation operation) throws InterruptedException {
+        AtomicLong failed = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) count * t / threads);
+            int to = (int) ((long) count * (t + 1) / threads);
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = from; i < to; i++) {
+                    try {
+                        operation.apply(i, random);
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-24s ops=%d time=%6dms ops/s=%,12.0f ns/op/thread=%5d failed=%d%n",
+                name, count, nanos / 1000000, count / (nanos / 1e9), nanos * threads / count, failed.get());
+    }
+
+    private interface Operation {
+        void apply(int i, ThreadLocalRandom random);
+    }
+}
@@ -0,0 +1,143 @@
+package io.github.avidbyte.standard;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Subscribes sessions on in-memory channels to a {@link TopicRegistry} and measures how long a publish takes until
+ * every subscriber has received the message, for plain topics and for wildcard subscriptions, and the heap the
+ * subscriptions take.
+ * <p>
+ * Every session subscribes to {@code topics per session} consecutive topics, so each of the topics has
+ * {@code sessions * topics per session / topics} subscribers. The defaults hold 1M subscriptions over 100k topics.
+ * <p>
+ * usage: TopicBenchmark [sessions] [topics per session] [topics] [publishes] [event loops]
+ */
+public class TopicBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int perSession = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int topicCount = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        int publishes = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+        int loops = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+        EventLoopGroup group = new DefaultEventLoopGroup(loops);
+        AtomicReference<CountDownLatch> delivered = new AtomicReference<>(new CountDownLatch(0));
+        TopicRegistry registry = new TopicRegistry();
+        List<Session> sessions = new ArrayList<>();
+        LocalAddress address = new LocalAddress("topic-benchmark");
+        Channel server = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        synchronized (sessions) {
+                            sessions.add(new Session(ch, registry));
+                        }
+                    }
+                }).bind(address).sync().channel();
+        ChannelInboundHandlerAdapter counter = new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ReferenceCountUtil.release(msg);
+                delivered.get().countDown();
+            }
+
+            @Override
+            public boolean isSharable() {
+                return true;
+            }
+        };
+        Bootstrap client = new Bootstrap().group(group).channel(LocalChannel.class).handler(counter);
+        try {
+            for (int i = 0; i < sessionCount; i++) {
+                client.connect(address).sync();
+            }
+            while (sessions.size() < sessionCount) {
+                Thread.sleep(10);
+            }
+
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            for (int i = 0; i < sessionCount; i++) {
+                for (int t = 0; t < perSession; t++) {
+                    sessions.get(i).subscribe("prices." + ((long) i * perSession + t) % topicCount);
+                }
+            }
+            awaitLoops(group, loops);
+            System.out.printf("subscribed %,d sessions to %,d topics each in %d ms, %,d subscriptions take about %d MB%n",
+                    sessionCount, perSession, (System.nanoTime() - start) / 1000000,
+                    (long) sessionCount * perSession, (usedHeap() - heapBefore) >> 20);
+
+            int subscribers = (int) ((long) sessionCount * perSession / topicCount);
+            run("plain topics", registry, delivered, publishes, topicCount, subscribers);
+
+            // every session also follows a region with a pattern, a publish then matches a trie walk as well
+            int regions = Math.max(1, sessionCount / 10);
+            for (int i = 0; i < sessionCount; i++) {
+                sessions.get(i).subscribe(i % 2 == 0 ? "prices.region" + i % regions + ".#" : "prices.*.region" + i % regions);
+            }
+            awaitLoops(group, loops);
+            System.out.printf("added %,d wildcard subscriptions over %,d regions%n", sessionCount, regions);
+            run("with wildcards", registry, delivered, publishes, topicCount, subscribers);
+        } finally {
+            server.close().sync();
+            group.shutdownGracefully();
+        }
+    }
+
+    private static void run(String name, TopicRegistry registry, AtomicReference<CountDownLatch> delivered,
+                            int publishes, int topicCount, int subscribers) throws Exception {
+        long[] nanos = new long[publishes];
+        for (int warmUp = 0; warmUp < 2; warmUp++) {
+            for (int p = 0; p < publishes; p++) {
+                CountDownLatch latch = new CountDownLatch(subscribers);
+                delivered.set(latch);
+                long start = System.nanoTime();
+                registry.publish("prices." + (p * 7919L) % topicCount, "{\"bid\":101.25,\"ask\":101.5}");
+                if (!latch.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("missing " + latch.getCount() + " deliveries");
+                }
+                nanos[p] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-15s subscribers/topic=%d publish to last delivery: median=%6.1f us p99=%6.1f us max=%7.1f us%n",
+                name, subscribers, nanos[publishes / 2] / 1e3, nanos[(int) (publishes * 0.99)] / 1e3, nanos[publishes - 1] / 1e3);
+    }
+
+    /**
+     * wait until every event loop has run the tasks submitted so far
+     */
+    private static void awaitLoops(EventLoopGroup group, int loops) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(loops);
+        group.forEach(loop -> loop.execute(done::countDown));
+        done.await();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
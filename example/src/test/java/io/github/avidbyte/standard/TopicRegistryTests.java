@@ -0,0 +1,143 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Wildcard subscriptions match the topics they should, once per session, and leave nothing behind.
+ */
+class TopicRegistryTests {
+
+    private final TopicRegistry registry = new TopicRegistry();
+
+    @Test
+    void anyWordsMatchesZeroOrMoreWords() {
+        EmbeddedChannel channel = subscribed("a.#");
+        assertEquals(1, published(channel, "a"));
+        assertEquals(1, published(channel, "a.b"));
+        assertEquals(1, published(channel, "a.b.c"));
+        assertEquals(0, published(channel, "b"));
+        assertEquals(0, published(channel, "b.a"));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void leadingAnyWordsMatchesTheLastWord() {
+        EmbeddedChannel channel = subscribed("#.b");
+        assertEquals(1, published(channel, "b"));
+        assertEquals(1, published(channel, "a.b"));
+        assertEquals(1, published(channel, "a.x.b"));
+        assertEquals(0, published(channel, "a.b.c"));
+        assertEquals(0, published(channel, "a"));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void oneWordMatchesExactlyOneWord() {
+        EmbeddedChannel channel = subscribed("a.*.c");
+        assertEquals(1, published(channel, "a.b.c"));
+        assertEquals(1, published(channel, "a.x.c"));
+        assertEquals(0, published(channel, "a.c"));
+        assertEquals(0, published(channel, "a.b.b.c"));
+        assertEquals(0, published(channel, "a.b.d"));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void sessionMatchedByEveryPatternGetsTheMessageOnce() {
+        EmbeddedChannel channel = subscribed("a.b.c", "a.#", "a.*.c", "#.c", "#");
+        EmbeddedChannel other = subscribed("a.*.c");
+        registry.publish("a.b.c", "message");
+        assertEquals(1, drain(channel));
+        assertEquals(1, drain(other));
+        channel.finishAndReleaseAll();
+        other.finishAndReleaseAll();
+    }
+
+    @Test
+    void unsubscribingAndRemovingLeaveNothingBehind() throws ReflectiveOperationException {
+        Session session = subscribe("a.b", "a.#", "a.*.c");
+        EmbeddedChannel channel = (EmbeddedChannel) session.channel();
+
+        registry.unsubscribe(session, "a.#");
+        assertEquals(1, published(channel, "a.b"));
+        assertEquals(1, published(channel, "a.b.c"));
+        assertEquals(0, published(channel, "a"));
+
+        registry.unsubscribe(session, "a.*.c");
+        registry.unsubscribe(session, "a.b");
+        assertEquals(0, published(channel, "a.b.c"));
+        assertEquals(0, published(channel, "a.b"));
+        assertEmpty(shard(channel));
+
+        registry.subscribe(session, "a.b");
+        registry.subscribe(session, "#.b");
+        assertEquals(1, published(channel, "a.b"));
+        registry.remove(session);
+        assertEquals(0, published(channel, "a.b"));
+        assertEmpty(shard(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    private Session subscribe(String... topics) {
+        Session session = new Session(new EmbeddedChannel());
+        for (String topic : topics) {
+            registry.subscribe(session, topic);
+        }
+        return session;
+    }
+
+    private EmbeddedChannel subscribed(String... topics) {
+        return (EmbeddedChannel) subscribe(topics).channel();
+    }
+
+    /**
+     * @return number of messages the channel got for the topic
+     */
+    private int published(EmbeddedChannel channel, String topic) {
+        registry.publish(topic, "message");
+        return drain(channel);
+    }
+
+    private static int drain(EmbeddedChannel channel) {
+        // a publish hands the writes to the event loop of each shard
+        channel.runPendingTasks();
+        int count = 0;
+        for (Object message; (message = channel.readOutbound()) != null; ) {
+            ReferenceCountUtil.release(message);
+            count++;
+        }
+        return count;
+    }
+
+    private Object shard(EmbeddedChannel channel) throws ReflectiveOperationException {
+        Map<?, ?> shards = (Map<?, ?>) field(registry, "shards");
+        Object shard = shards.get(channel.eventLoop());
+        assertNotNull(shard);
+        return shard;
+    }
+
+    private static void assertEmpty(Object shard) throws ReflectiveOperationException {
+        assertTrue(((Map<?, ?>) field(shard, "topics")).isEmpty());
+        assertTrue(((Map<?, ?>) field(shard, "subscriptions")).isEmpty());
+        assertEquals(0, field(shard, "patternCount"));
+        Object patterns = field(shard, "patterns");
+        assertNull(field(patterns, "children"));
+        assertNull(field(patterns, "sessions"));
+    }
+
+    private static Object field(Object target, String name) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+}
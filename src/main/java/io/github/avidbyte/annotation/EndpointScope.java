@@ -0,0 +1,28 @@
+package io.github.avidbyte.annotation;
+
+/**
+ * How endpoint instances are created for new connections.
+ *
+ * @author Aaron
+ * @see ServerEndpoint#scope()
+ */
+public enum EndpointScope {
+
+    /**
+     * every connection uses the spring bean of the endpoint,
+     * per-connection data belongs in {@link io.github.avidbyte.standard.Session#setState(Object)}
+     */
+    SINGLETON,
+
+    /**
+     * instances are reused from a pool of at most {@link ServerEndpoint#poolSize()} idle instances,
+     * an instance is returned to the pool when its connection closes. Fields keep the values the previous connection
+     * left in them, endpoints either keep no per-connection fields or reset them in an {@link OnRelease} method
+     */
+    POOLED,
+
+    /**
+     * every connection gets a new autowired instance
+     */
+    PROTOTYPE
+}
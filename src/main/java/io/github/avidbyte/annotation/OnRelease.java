@@ -0,0 +1,19 @@
+package io.github.avidbyte.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Called without arguments after {@link OnClose}, before an instance of a {@link EndpointScope#POOLED} endpoint goes
+ * back to the pool. It resets the fields the connection left behind, so the next connection does not inherit them. An
+ * instance whose method throws is not pooled again.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OnRelease {
+}
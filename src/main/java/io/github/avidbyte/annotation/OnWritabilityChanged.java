@@ -0,0 +1,18 @@
+package io.github.avidbyte.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Called when the write buffer of the connection crosses its high water mark, and again once it has drained below the
+ * low water mark. A {@code boolean} parameter receives whether the connection is writable.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OnWritabilityChanged {
+}
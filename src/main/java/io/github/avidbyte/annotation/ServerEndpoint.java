@@ -19,4 +19,16 @@ public @interface ServerEndpoint {
      */
     String value() default "/";
 
+    /**
+     * how endpoint instances are created for new connections
+     * @return EndpointScope
+     */
+    EndpointScope scope() default EndpointScope.PROTOTYPE;
+
+    /**
+     * maximum number of idle instances kept when scope is {@link EndpointScope#POOLED}
+     * @return int
+     */
+    int poolSize() default 64;
+
 }
@@ -12,12 +12,52 @@ public class NettyProperties {
 
     private int port = 80;
 
+    /**
+     * auto, nio or epoll. auto uses epoll when the native library is available and nio otherwise
+     */
+    private String transport = "auto";
+
     private int bossLoopGroupThreads = 1;
 
+    /**
+     * number of SO_REUSEPORT listening sockets bound to host:port, each served by its own boss event loop (epoll only)
+     */
+    private int reusePortListeners = 1;
+
     private int workerLoopGroupThreads = 0;
 
     private boolean useCompressionHandler = false;
 
+    /**
+     * make the server start every compressed message with an empty context, so one compressed broadcast fits all sessions
+     */
+    private boolean compressionServerNoContextTakeover = false;
+
+    /**
+     * make clients that offer it start every compressed message with an empty context, the server then keeps no inflater for them
+     */
+    private boolean compressionClientNoContextTakeover = false;
+
+    /**
+     * deflate level, 1 (fastest) to 9 (smallest)
+     */
+    private int compressionLevel = 6;
+
+    /**
+     * LZ77 window of the server's compressor, 8 to 15, below 15 it needs com.jcraft:jzlib
+     */
+    private int compressionServerMaxWindowBits = 15;
+
+    /**
+     * LZ77 window the client's compressor is asked to use, 8 to 15, if the client offers to limit it
+     */
+    private int compressionClientMaxWindowBits = 15;
+
+    /**
+     * messages with less bytes are sent uncompressed
+     */
+    private int compressionMinPayloadSize = 0;
+
 
     // --------------option------------
     private int optionConnectTimeoutMillis = 30000;
@@ -42,6 +82,59 @@ public class NettyProperties {
 
     private boolean childOptionAllowHalfClosure = false;
 
+    /**
+     * coalesce the flushes of an event loop tick with a FlushConsolidationHandler, flushing at the latest after this
+     * many flushes. 0 flushes every time
+     */
+    private int flushConsolidationAfterFlushes = 0;
+
+    /**
+     * what happens to messages sent while the write buffer is above its high water mark: none, block-until-writable,
+     * drop-newest, drop-oldest or disconnect-after. Empty for none
+     */
+    private String slowConsumerPolicy = "";
+
+    /**
+     * messages drop-oldest holds while the connection is unwritable
+     */
+    private int slowConsumerQueueCapacity = 256;
+
+    /**
+     * how long block-until-writable and disconnect-after let a connection stay unwritable before closing it
+     */
+    private long slowConsumerTimeoutMillis = 30000;
+
+    /**
+     * keep this many of the last messages of every session, so a reconnecting client can resume and get those it
+     * missed. 0 disables resuming
+     */
+    private int replayBufferMessages = 0;
+
+    /**
+     * bytes of messages kept per session, off-heap
+     */
+    private int replayBufferBytes = 256 * 1024;
+
+    /**
+     * how long the messages of a closed session are kept for a resume
+     */
+    private long replayGraceMillis = 60000;
+
+    /**
+     * directory of the journal of messages sent to all sessions, empty for none
+     */
+    private String journalDirectory = "";
+
+    /**
+     * size of a journal segment file
+     */
+    private int journalSegmentBytes = 64 * 1024 * 1024;
+
+    /**
+     * journal segments kept, the oldest are deleted
+     */
+    private int journalSegments = 8;
+
 
     //---- idleEvent ----
     private int readerIdleTimeSeconds = 0;
@@ -53,6 +146,16 @@ public class NettyProperties {
     //----- handshake ----
     private int maxFramePayloadLength = 65536;
 
+    /**
+     * maximum size of a message aggregated from its fragments, larger messages close the connection with 1009
+     */
+    private int maxMessageSize = Integer.MAX_VALUE;
+
+    /**
+     * deliver every fragment of a message to OnMessage/OnBinary as it arrives instead of aggregating the message first
+     */
+    private boolean streamFragments = false;
+
     //----- eventExecutorGroup ----
     /**
      * useEventExecutorGroup(another thread pool) to perform time-consuming synchronous business logic
@@ -61,6 +164,18 @@ public class NettyProperties {
 
     private int eventExecutorGroupThreads = 16;
 
+    /**
+     * event-loop, executor-group, virtual-threads or work-stealing. When empty, use-event-executor-group decides between
+     * executor-group and event-loop. virtual-threads falls back to executor-group on a JDK without virtual threads
+     */
+    private String executionMode = "";
+
+    /**
+     * callbacks a session may have queued in the virtual-threads and work-stealing modes before its channel stops
+     * reading, 0 means unbounded
+     */
+    private int sessionQueueCapacity = 1024;
+
     //------------------------- ssl (refer to spring Ssl) -------------------------
 
     /**
@@ -103,6 +218,14 @@ public class NettyProperties {
         this.port = port;
     }
 
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
     public int getBossLoopGroupThreads() {
         return bossLoopGroupThreads;
     }
@@ -111,6 +234,14 @@ public class NettyProperties {
         this.bossLoopGroupThreads = bossLoopGroupThreads;
     }
 
+    public int getReusePortListeners() {
+        return reusePortListeners;
+    }
+
+    public void setReusePortListeners(int reusePortListeners) {
+        this.reusePortListeners = reusePortListeners;
+    }
+
     public int getWorkerLoopGroupThreads() {
         return workerLoopGroupThreads;
     }
@@ -127,6 +258,54 @@ public class NettyProperties {
         this.useCompressionHandler = useCompressionHandler;
     }
 
+    public boolean isCompressionServerNoContextTakeover() {
+        return compressionServerNoContextTakeover;
+    }
+
+    public void setCompressionServerNoContextTakeover(boolean compressionServerNoContextTakeover) {
+        this.compressionServerNoContextTakeover = compressionServerNoContextTakeover;
+    }
+
+    public boolean isCompressionClientNoContextTakeover() {
+        return compressionClientNoContextTakeover;
+    }
+
+    public void setCompressionClientNoContextTakeover(boolean compressionClientNoContextTakeover) {
+        this.compressionClientNoContextTakeover = compressionClientNoContextTakeover;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionServerMaxWindowBits() {
+        return compressionServerMaxWindowBits;
+    }
+
+    public void setCompressionServerMaxWindowBits(int compressionServerMaxWindowBits) {
+        this.compressionServerMaxWindowBits = compressionServerMaxWindowBits;
+    }
+
+    public int getCompressionClientMaxWindowBits() {
+        return compressionClientMaxWindowBits;
+    }
+
+    public void setCompressionClientMaxWindowBits(int compressionClientMaxWindowBits) {
+        this.compressionClientMaxWindowBits = compressionClientMaxWindowBits;
+    }
+
+    public int getCompressionMinPayloadSize() {
+        return compressionMinPayloadSize;
+    }
+
+    public void setCompressionMinPayloadSize(int compressionMinPayloadSize) {
+        this.compressionMinPayloadSize = compressionMinPayloadSize;
+    }
+
     public int getOptionConnectTimeoutMillis() {
         return optionConnectTimeoutMillis;
     }
@@ -215,6 +394,86 @@ public class NettyProperties {
         this.childOptionAllowHalfClosure = childOptionAllowHalfClosure;
     }
 
+    public int getFlushConsolidationAfterFlushes() {
+        return flushConsolidationAfterFlushes;
+    }
+
+    public void setFlushConsolidationAfterFlushes(int flushConsolidationAfterFlushes) {
+        this.flushConsolidationAfterFlushes = flushConsolidationAfterFlushes;
+    }
+
+    public String getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(String slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public int getSlowConsumerQueueCapacity() {
+        return slowConsumerQueueCapacity;
+    }
+
+    public void setSlowConsumerQueueCapacity(int slowConsumerQueueCapacity) {
+        this.slowConsumerQueueCapacity = slowConsumerQueueCapacity;
+    }
+
+    public long getSlowConsumerTimeoutMillis() {
+        return slowConsumerTimeoutMillis;
+    }
+
+    public void setSlowConsumerTimeoutMillis(long slowConsumerTimeoutMillis) {
+        this.slowConsumerTimeoutMillis = slowConsumerTimeoutMillis;
+    }
+
+    public int getReplayBufferMessages() {
+        return replayBufferMessages;
+    }
+
+    public void setReplayBufferMessages(int replayBufferMessages) {
+        this.replayBufferMessages = replayBufferMessages;
+    }
+
+    public int getReplayBufferBytes() {
+        return replayBufferBytes;
+    }
+
+    public void setReplayBufferBytes(int replayBufferBytes) {
+        this.replayBufferBytes = replayBufferBytes;
+    }
+
+    public long getReplayGraceMillis() {
+        return replayGraceMillis;
+    }
+
+    public void setReplayGraceMillis(long replayGraceMillis) {
+        this.replayGraceMillis = replayGraceMillis;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public void setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    public int getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+
+    public void setJournalSegmentBytes(int journalSegmentBytes) {
+        this.journalSegmentBytes = journalSegmentBytes;
+    }
+
+    public int getJournalSegments() {
+        return journalSegments;
+    }
+
+    public void setJournalSegments(int journalSegments) {
+        this.journalSegments = journalSegments;
+    }
+
     public int getReaderIdleTimeSeconds() {
         return readerIdleTimeSeconds;
     }
@@ -247,6 +506,22 @@ public class NettyProperties {
         this.maxFramePayloadLength = maxFramePayloadLength;
     }
 
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public boolean isStreamFragments() {
+        return streamFragments;
+    }
+
+    public void setStreamFragments(boolean streamFragments) {
+        this.streamFragments = streamFragments;
+    }
+
     public boolean isUseEventExecutorGroup() {
         return useEventExecutorGroup;
     }
@@ -263,6 +538,22 @@ public class NettyProperties {
         this.eventExecutorGroupThreads = eventExecutorGroupThreads;
     }
 
+    public String getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(String executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public int getSessionQueueCapacity() {
+        return sessionQueueCapacity;
+    }
+
+    public void setSessionQueueCapacity(int sessionQueueCapacity) {
+        this.sessionQueueCapacity = sessionQueueCapacity;
+    }
+
     public String getSslKeyPassword() {
         return sslKeyPassword;
     }
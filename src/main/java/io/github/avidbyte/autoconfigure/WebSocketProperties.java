@@ -18,6 +18,53 @@ public class WebSocketProperties {
 
     private Map<String, NettyProperties> endpoint = new LinkedHashMap<>();
 
+    /**
+     * share one worker EventLoopGroup and one EventExecutorGroup between all endpoints and ports
+     * instead of creating them per port
+     */
+    private boolean shareEventLoopGroup = false;
+
+    /**
+     * threads of the shared worker EventLoopGroup, 0 means netty's default (2 * cores)
+     */
+    private int sharedWorkerLoopGroupThreads = 0;
+
+    /**
+     * threads of the shared EventExecutorGroup, also used for the shared work-stealing pool
+     */
+    private int sharedEventExecutorGroupThreads = 16;
+
+    /**
+     * bytes of inbound frames all connections may hold at once before connections stop reading, 0 means unbounded
+     */
+    private long inboundMemoryBudget = 0;
+
+    /**
+     * oldest-first or largest-first, which connection stops reading when the inbound memory budget is exceeded
+     */
+    private String inboundMemoryPolicy = "oldest-first";
+
+    /**
+     * with a ClusterBus bean, a batch of broadcasts to the other nodes is sent once it holds this many bytes
+     */
+    private int clusterBatchMaxBytes = 64 * 1024;
+
+    /**
+     * with a ClusterBus bean, a batch of broadcasts to the other nodes is sent at the latest this long after its first
+     * message
+     */
+    private long clusterBatchLingerMillis = 1;
+
+    /**
+     * with a SessionDirectory bean, the owners of this many keys are cached, 0 looks every message up
+     */
+    private int clusterDirectoryCacheSize = 10000;
+
+    /**
+     * with a SessionDirectory bean, a cached owner is looked up again after this long
+     */
+    private long clusterDirectoryCacheTtlMillis = 5000;
+
     public Map<String, NettyProperties> getEndpoint() {
         return endpoint;
     }
@@ -26,4 +73,76 @@ public class WebSocketProperties {
         this.endpoint = endpoint;
     }
 
+    public boolean isShareEventLoopGroup() {
+        return shareEventLoopGroup;
+    }
+
+    public void setShareEventLoopGroup(boolean shareEventLoopGroup) {
+        this.shareEventLoopGroup = shareEventLoopGroup;
+    }
+
+    public int getSharedWorkerLoopGroupThreads() {
+        return sharedWorkerLoopGroupThreads;
+    }
+
+    public void setSharedWorkerLoopGroupThreads(int sharedWorkerLoopGroupThreads) {
+        this.sharedWorkerLoopGroupThreads = sharedWorkerLoopGroupThreads;
+    }
+
+    public int getSharedEventExecutorGroupThreads() {
+        return sharedEventExecutorGroupThreads;
+    }
+
+    public void setSharedEventExecutorGroupThreads(int sharedEventExecutorGroupThreads) {
+        this.sharedEventExecutorGroupThreads = sharedEventExecutorGroupThreads;
+    }
+
+
+    public long getInboundMemoryBudget() {
+        return inboundMemoryBudget;
+    }
+
+    public void setInboundMemoryBudget(long inboundMemoryBudget) {
+        this.inboundMemoryBudget = inboundMemoryBudget;
+    }
+
+    public String getInboundMemoryPolicy() {
+        return inboundMemoryPolicy;
+    }
+
+    public void setInboundMemoryPolicy(String inboundMemoryPolicy) {
+        this.inboundMemoryPolicy = inboundMemoryPolicy;
+    }
+
+    public int getClusterBatchMaxBytes() {
+        return clusterBatchMaxBytes;
+    }
+
+    public void setClusterBatchMaxBytes(int clusterBatchMaxBytes) {
+        this.clusterBatchMaxBytes = clusterBatchMaxBytes;
+    }
+
+    public long getClusterBatchLingerMillis() {
+        return clusterBatchLingerMillis;
+    }
+
+    public void setClusterBatchLingerMillis(long clusterBatchLingerMillis) {
+        this.clusterBatchLingerMillis = clusterBatchLingerMillis;
+    }
+
+    public int getClusterDirectoryCacheSize() {
+        return clusterDirectoryCacheSize;
+    }
+
+    public void setClusterDirectoryCacheSize(int clusterDirectoryCacheSize) {
+        this.clusterDirectoryCacheSize = clusterDirectoryCacheSize;
+    }
+
+    public long getClusterDirectoryCacheTtlMillis() {
+        return clusterDirectoryCacheTtlMillis;
+    }
+
+    public void setClusterDirectoryCacheTtlMillis(long clusterDirectoryCacheTtlMillis) {
+        this.clusterDirectoryCacheTtlMillis = clusterDirectoryCacheTtlMillis;
+    }
 }
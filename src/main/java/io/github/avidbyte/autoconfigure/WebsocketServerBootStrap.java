@@ -2,10 +2,20 @@ package io.github.avidbyte.autoconfigure;
 
 import io.github.avidbyte.annotation.ServerEndpoint;
 import io.github.avidbyte.exception.DeploymentException;
+import io.github.avidbyte.standard.ClusterBus;
+import io.github.avidbyte.standard.ClusterRelay;
+import io.github.avidbyte.standard.InboundMemoryBudget;
+import io.github.avidbyte.standard.MessageJournal;
 import io.github.avidbyte.standard.MethodMapping;
 import io.github.avidbyte.standard.ServerEndpointConfig;
+import io.github.avidbyte.standard.SessionDirectory;
+import io.github.avidbyte.standard.SessionRegistry;
+import io.github.avidbyte.standard.TopicRegistry;
+import io.github.avidbyte.standard.SharedEventLoopGroups;
 import io.github.avidbyte.standard.WebSocketEventServer;
 import io.github.avidbyte.standard.WebsocketServer;
+import io.github.avidbyte.util.ThreadStatsUtils;
+import io.github.avidbyte.util.TransportUtils;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.SmartInitializingSingleton;
@@ -18,7 +28,9 @@ import org.springframework.core.io.ResourceLoader;
 import org.springframework.util.ClassUtils;
 
 import javax.net.ssl.SSLException;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -37,6 +49,14 @@ public class WebsocketServerBootStrap extends ApplicationObjectSupport implement
 
     private final Map<InetSocketAddress, WebsocketServer> addressWebsocketServerMap = new HashMap<>();
 
+    private final Map<Class<?>, MethodMapping> endpointMethodMappings = new HashMap<>();
+
+    private SharedEventLoopGroups sharedEventLoopGroups;
+
+    private InboundMemoryBudget inboundMemoryBudget;
+
+    private ClusterRelay clusterRelay;
+
 
     @Override
     public void setBeanFactory(BeanFactory beanFactory) {
@@ -93,6 +113,22 @@ public class WebsocketServerBootStrap extends ApplicationObjectSupport implement
             throw new IllegalStateException("Failed to register ServerEndpointConfig: " + serverEndpointConfig, e);
         }
 
+        endpointMethodMappings.put(endpointClass, methodMapping);
+        // prepared messages compress at the level the connections of the endpoint negotiated
+        methodMapping.getSessionRegistry().setCompressionLevel(serverEndpointConfig.getCompressionLevel());
+        methodMapping.getTopicRegistry().setCompressionLevel(serverEndpointConfig.getCompressionLevel());
+
+        if (!serverEndpointConfig.getJournalDirectory().isEmpty()) {
+            MessageJournal journal;
+            try {
+                journal = new MessageJournal(Paths.get(serverEndpointConfig.getJournalDirectory()), serverEndpointConfig.getJournalSegmentBytes(), serverEndpointConfig.getJournalSegments());
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open the journal of " + path + " in " + serverEndpointConfig.getJournalDirectory(), e);
+            }
+            methodMapping.getSessionRegistry().setJournal(journal);
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+        }
+
         InetSocketAddress inetSocketAddress = new InetSocketAddress(serverEndpointConfig.getHost(), serverEndpointConfig.getPort());
 
         WebsocketServer websocketServer = addressWebsocketServerMap.get(inetSocketAddress);
@@ -106,13 +142,43 @@ public class WebsocketServerBootStrap extends ApplicationObjectSupport implement
     }
 
     private void init() {
+        if (webSocketProperties.isShareEventLoopGroup() && !addressWebsocketServerMap.isEmpty()) {
+            // one transport for every server, epoll only if no endpoint asks for nio
+            boolean epoll = true;
+            for (WebsocketServer websocketServer : addressWebsocketServerMap.values()) {
+                epoll &= TransportUtils.useEpoll(websocketServer.getConfig().getTransport());
+            }
+            SharedEventLoopGroups groups = new SharedEventLoopGroups(epoll, webSocketProperties.getSharedWorkerLoopGroupThreads(), webSocketProperties.getSharedEventExecutorGroupThreads());
+            sharedEventLoopGroups = groups;
+            Runtime.getRuntime().addShutdownHook(new Thread(groups::shutdownGracefully));
+        }
+        if (webSocketProperties.getInboundMemoryBudget() > 0) {
+            inboundMemoryBudget = new InboundMemoryBudget(webSocketProperties.getInboundMemoryBudget(), InboundMemoryBudget.Policy.parse(webSocketProperties.getInboundMemoryPolicy()));
+        }
+        ClusterBus clusterBus = findSingleBean(ClusterBus.class);
+        SessionDirectory sessionDirectory = findSingleBean(SessionDirectory.class);
+        if (clusterBus == null && sessionDirectory != null) {
+            logger.warn("Ignoring the SessionDirectory bean, it needs a ClusterBus bean");
+        }
+        if (clusterBus != null) {
+            ClusterRelay relay = new ClusterRelay(clusterBus, webSocketProperties.getClusterBatchMaxBytes(), webSocketProperties.getClusterBatchLingerMillis());
+            if (sessionDirectory != null) {
+                relay.useDirectory(sessionDirectory, webSocketProperties.getClusterDirectoryCacheSize(), webSocketProperties.getClusterDirectoryCacheTtlMillis());
+            }
+            endpointMethodMappings.forEach((endpointClass, methodMapping) -> relay.register(endpointClass.getName(), methodMapping));
+            relay.start();
+            clusterRelay = relay;
+            Runtime.getRuntime().addShutdownHook(new Thread(relay::close));
+            logger.info("Relaying broadcasts to the cluster through " + clusterBus.getClass().getName());
+        }
         for (Map.Entry<InetSocketAddress, WebsocketServer> entry : addressWebsocketServerMap.entrySet()) {
             WebsocketServer websocketServer = entry.getValue();
+            websocketServer.setInboundMemoryBudget(inboundMemoryBudget);
             try {
-                websocketServer.init();
+                websocketServer.init(sharedEventLoopGroups);
                 WebSocketEventServer webSocketEventServer = websocketServer.getWebSocketEventServer();
                 StringJoiner stringJoiner = new StringJoiner(",");
-                webSocketEventServer.getPathMatcherSet().forEach(pathMatcher -> stringJoiner.add("'" + pathMatcher.getPattern() + "'"));
+                webSocketEventServer.getRouter().getPatterns().forEach(pattern -> stringJoiner.add("'" + pattern + "'"));
                 logger.info(String.format("\033[34mNetty WebSocket started on port: %s with context path(s): %s \033[0m", webSocketEventServer.getPort(), stringJoiner));
             } catch (InterruptedException e) {
                 logger.error(String.format("websocket [%s] init fail", entry.getKey()), e);
@@ -122,6 +188,78 @@ public class WebsocketServerBootStrap extends ApplicationObjectSupport implement
         }
     }
 
+    private <T> T findSingleBean(Class<T> type) {
+        ApplicationContext context = getApplicationContext();
+        if (context == null) {
+            return null;
+        }
+        String[] names = context.getBeanNamesForType(type);
+        if (names.length > 1) {
+            throw new IllegalStateException("Expected at most one " + type.getSimpleName() + " bean, found " + Arrays.toString(names));
+        }
+        return names.length == 0 ? null : context.getBean(names[0], type);
+    }
+
+    /**
+     * @return the relay of broadcasts to the other nodes, {@code null} without a {@link ClusterBus} bean
+     */
+    public ClusterRelay getClusterRelay() {
+        return clusterRelay;
+    }
+
+    /**
+     * number of live threads created by the websocket servers (boss, worker and executor threads)
+     *
+     * @return int
+     */
+    public int getThreadCount() {
+        return ThreadStatsUtils.threadCount();
+    }
+
+    /**
+     * total context switches of the live websocket server threads
+     *
+     * @return long, {@code -1} when not running on linux
+     */
+    public long getContextSwitches() {
+        return ThreadStatsUtils.contextSwitches();
+    }
+
+    /**
+     * open sessions of an endpoint
+     *
+     * @param endpointClass class annotated with {@link ServerEndpoint}
+     * @return SessionRegistry
+     */
+    public SessionRegistry getSessionRegistry(Class<?> endpointClass) {
+        MethodMapping methodMapping = endpointMethodMappings.get(ClassUtils.getUserClass(endpointClass));
+        if (methodMapping == null) {
+            throw new IllegalArgumentException("Not a registered ServerEndpoint: " + endpointClass.getName());
+        }
+        return methodMapping.getSessionRegistry();
+    }
+
+    /**
+     * topics of an endpoint
+     *
+     * @param endpointClass class annotated with {@link ServerEndpoint}
+     * @return TopicRegistry
+     */
+    public TopicRegistry getTopicRegistry(Class<?> endpointClass) {
+        MethodMapping methodMapping = endpointMethodMappings.get(ClassUtils.getUserClass(endpointClass));
+        if (methodMapping == null) {
+            throw new IllegalArgumentException("Not a registered ServerEndpoint: " + endpointClass.getName());
+        }
+        return methodMapping.getTopicRegistry();
+    }
+
+    /**
+     * @return the inbound memory budget shared by every server, {@code null} if inbound-memory-budget is not set
+     */
+    public InboundMemoryBudget getInboundMemoryBudget() {
+        return inboundMemoryBudget;
+    }
+
     @Override
     public void setResourceLoader(ResourceLoader resourceLoader) {
 
@@ -0,0 +1,51 @@
+package io.github.avidbyte.standard;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries broadcasts between the nodes of a cluster. Declare one as a bean and
+ * {@link SessionRegistry#broadcastText(CharSequence, java.util.function.Predicate) broadcasts} to all sessions and
+ * {@link TopicRegistry#publish(String, CharSequence) publishes} reach the sessions of every node: each node batches
+ * the messages it sends, encoded once, and delivers the batches of the other nodes to its own sessions.
+ * <p>
+ * An implementation only moves opaque batches, e.g. over Redis pub/sub or a message broker. A batch may be handed
+ * back to the node that sent it, it is ignored there. {@link InMemoryClusterBus} and {@link TcpClusterBus} connect
+ * nodes in one JVM or over TCP without external services.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public interface ClusterBus {
+
+    /**
+     * connect to the other nodes
+     *
+     * @param node     id of this node, see {@link #send(String, byte[])}
+     * @param receiver called with every batch of the other nodes, on a thread of the bus, it does not block
+     */
+    void start(String node, Consumer<byte[]> receiver);
+
+    /**
+     * hand a batch to every other node, called by one thread at a time
+     *
+     * @param batch batch, not changed afterwards
+     */
+    void send(byte[] batch);
+
+    /**
+     * hand a batch to one node, called by one thread at a time. By default it goes to every node, the other nodes
+     * ignore it
+     *
+     * @param node  id the node was started with
+     * @param batch batch, not changed afterwards
+     */
+    default void send(String node, byte[] batch) {
+        send(batch);
+    }
+
+    /**
+     * disconnect from the other nodes
+     */
+    default void close() {
+    }
+}
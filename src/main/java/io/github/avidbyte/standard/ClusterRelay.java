@@ -0,0 +1,577 @@
+package io.github.avidbyte.standard;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relays the cluster-wide broadcasts and publishes of the endpoints of this node through a {@link ClusterBus}, and
+ * delivers those of the other nodes to the local sessions.
+ * <p>
+ * Outgoing messages are appended, encoded once, to the current batch, which is sent by one thread once it reaches
+ * {@code maxBatchBytes} or {@code lingerMillis} after its first message. So publishers do not wait for the bus and a
+ * burst of messages costs one send. An incoming batch is decoded once per node and each message is delivered as one
+ * {@link PreparedMessage} with the fan-out of {@link SessionRegistry} or {@link TopicRegistry}. Endpoints are matched
+ * across nodes by name, the class name of the endpoint when set up by the starter.
+ * <p>
+ * With a {@link SessionDirectory}, messages sent to a key go into a batch of their own for the node the key lives on.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public final class ClusterRelay {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(ClusterRelay.class);
+
+    private static final int VERSION = 1;
+
+    /**
+     * version, sending node, target node and message count
+     */
+    private static final int HEADER_BYTES = 1 + 16 + 16 + 4;
+
+    /**
+     * target of the batches for every node
+     */
+    private static final UUID EVERY_NODE = new UUID(0, 0);
+
+    private static final int BROADCAST = 0;
+    private static final int TOPIC = 1;
+    private static final int KEY = 2;
+
+    private final ClusterBus bus;
+    private final int maxBatchBytes;
+    private final long lingerMillis;
+    private final UUID nodeId = UUID.randomUUID();
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("cluster-relay", true));
+
+    private volatile SessionDirectory directory;
+    private volatile NearCache nearCache;
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong messagesUnrouted = new AtomicLong();
+
+    /**
+     * messages to keys whose owner is being looked up, in the order they were sent. They go out before any message
+     * that finds the owner in the near cache once the lookup has filled it
+     */
+    private final Map<String, List<PendingMessage>> lookups = new ConcurrentHashMap<>();
+
+    /**
+     * guarded by this, by target node
+     */
+    private final Map<UUID, Batch> batches = new HashMap<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param bus           bus
+     * @param maxBatchBytes a batch is sent once it holds this many bytes
+     * @param lingerMillis  a batch is sent at the latest this long after its first message, 0 to send it as soon as
+     *                      the sending thread gets to it
+     */
+    public ClusterRelay(ClusterBus bus, int maxBatchBytes, long lingerMillis) {
+        if (maxBatchBytes <= 0 || lingerMillis < 0) {
+            throw new IllegalArgumentException("maxBatchBytes must be positive and lingerMillis not negative, were " + maxBatchBytes + " and " + lingerMillis);
+        }
+        this.bus = bus;
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * route messages to keys with the directory, call before sessions bind keys
+     *
+     * @param directory      directory
+     * @param cacheSize      owners of this many keys are kept, least recently used dropped first, 0 to look up
+     *                       every message
+     * @param cacheTtlMillis a cached owner is looked up again after this long
+     */
+    public void useDirectory(SessionDirectory directory, int cacheSize, long cacheTtlMillis) {
+        if (cacheSize < 0 || cacheTtlMillis < 0) {
+            throw new IllegalArgumentException("cacheSize and cacheTtlMillis must not be negative, were " + cacheSize + " and " + cacheTtlMillis);
+        }
+        this.nearCache = cacheSize == 0 ? null : new NearCache(cacheSize, cacheTtlMillis);
+        this.directory = directory;
+    }
+
+    /**
+     * relay the broadcasts and publishes of an endpoint, and deliver those of the other nodes to it
+     *
+     * @param name          name of the endpoint, the same on every node
+     * @param methodMapping endpoint
+     */
+    public void register(String name, MethodMapping methodMapping) {
+        register(name, methodMapping.getSessionRegistry(), methodMapping.getTopicRegistry());
+    }
+
+    void register(String name, SessionRegistry sessionRegistry, TopicRegistry topicRegistry) {
+        endpoints.put(name, new Endpoint(sessionRegistry, topicRegistry));
+        sessionRegistry.relayTo(this, name);
+        topicRegistry.relayTo(this, name);
+    }
+
+    public void start() {
+        bus.start(nodeId.toString(), this::receive);
+    }
+
+    /**
+     * send the current batches and disconnect from the bus
+     */
+    public void close() {
+        sender.execute(this::flush);
+        sender.shutdown();
+        try {
+            sender.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        bus.close();
+    }
+
+    /**
+     * @return id of this node in the cluster and in the {@link SessionDirectory}
+     */
+    public String getNodeId() {
+        return nodeId.toString();
+    }
+
+    /**
+     * @return batches handed to the bus
+     */
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    /**
+     * @return messages handed to the bus
+     */
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /**
+     * @return messages of other nodes delivered to this node
+     */
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    /**
+     * @return messages to a key that no node holds, dropped
+     */
+    public long getMessagesUnrouted() {
+        return messagesUnrouted.get();
+    }
+
+    /**
+     * add a message for every node to the current batch
+     *
+     * @param endpoint name of the endpoint
+     * @param topic    topic, {@code null} for a broadcast to every session
+     * @param opcode   {@link PreparedMessage#OPCODE_TEXT} or {@link PreparedMessage#OPCODE_BINARY}
+     * @param payload  payload, not changed afterwards
+     */
+    void relay(String endpoint, String topic, int opcode, byte[] payload) {
+        append(EVERY_NODE, endpoint, topic == null ? BROADCAST : TOPIC, topic, opcode, payload);
+    }
+
+    /**
+     * send a message to the node the key lives on, dropped without a {@link SessionDirectory}
+     *
+     * @param endpoint name of the endpoint
+     * @param key      key the sessions are bound to, not on this node
+     * @param opcode   {@link PreparedMessage#OPCODE_TEXT} or {@link PreparedMessage#OPCODE_BINARY}
+     * @param payload  payload, not changed afterwards
+     */
+    void relayToKey(String endpoint, String key, int opcode, byte[] payload) {
+        NearCache cache = nearCache;
+        if (cache == null) {
+            // the directory may be remote, the caller does not wait for it. The sending thread looks every message up in order
+            execute(() -> route(endpoint, key, opcode, payload, null));
+            return;
+        }
+        UUID owner = cache.get(key);
+        if (owner == null) {
+            PendingMessage message = new PendingMessage(endpoint, opcode, payload);
+            lookups.compute(key, (k, pending) -> {
+                if (pending == null) {
+                    pending = new ArrayList<>();
+                    execute(() -> routePending(cache, key));
+                }
+                pending.add(message);
+                return pending;
+            });
+            return;
+        }
+        // behind the messages waiting for a lookup of the key that filled the cache, if they have not gone yet
+        if (!lookups.containsKey(key) || !enqueue(key, new PendingMessage(endpoint, opcode, payload))) {
+            append(owner, endpoint, KEY, key, opcode, payload);
+        }
+    }
+
+    /**
+     * @return {@code false} if the lookup of the key has completed meanwhile
+     */
+    private boolean enqueue(String key, PendingMessage message) {
+        return lookups.computeIfPresent(key, (k, pending) -> {
+            pending.add(message);
+            return pending;
+        }) != null;
+    }
+
+    /**
+     * a session of this node was bound to the key
+     */
+    void keyBound(String key) {
+        SessionDirectory directory = this.directory;
+        if (directory != null) {
+            NearCache cache = nearCache;
+            if (cache != null) {
+                cache.remove(key);
+            }
+            execute(() -> directory.register(key, nodeId.toString()));
+        }
+    }
+
+    /**
+     * the last session of this node bound to the key is gone
+     */
+    void keyUnbound(String key) {
+        SessionDirectory directory = this.directory;
+        if (directory != null) {
+            execute(() -> directory.unregister(key, nodeId.toString()));
+        }
+    }
+
+    /**
+     * look the owner of the key up and send the message to it, on the sending thread
+     *
+     * @param from node the message came from, not sent back there
+     */
+    private void route(String endpoint, String key, int opcode, byte[] payload, UUID from) {
+        UUID owner = lookup(key);
+        if (owner == null || owner.equals(from)) {
+            messagesUnrouted.incrementAndGet();
+            return;
+        }
+        NearCache cache = nearCache;
+        if (cache != null) {
+            cache.put(key, owner);
+        }
+        append(owner, endpoint, KEY, key, opcode, payload);
+    }
+
+    /**
+     * look the owner of the key up and send the messages waiting for it, on the sending thread
+     */
+    private void routePending(NearCache cache, String key) {
+        UUID owner = null;
+        try {
+            owner = lookup(key);
+        } finally {
+            UUID target = owner;
+            if (target != null) {
+                cache.put(key, target);
+            }
+            // a message finding the owner in the cache from now on waits until these are batched
+            lookups.compute(key, (k, pending) -> {
+                for (PendingMessage message : pending) {
+                    if (target == null) {
+                        messagesUnrouted.incrementAndGet();
+                    } else {
+                        append(target, message.endpoint, KEY, key, message.opcode, message.payload);
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return the node holding the key, {@code null} if nobody does or the directory is not up to date yet
+     */
+    private UUID lookup(String key) {
+        SessionDirectory directory = this.directory;
+        String node = directory == null ? null : directory.lookup(key);
+        UUID owner = node == null ? null : UUID.fromString(node);
+        return owner == null || owner.equals(nodeId) ? null : owner;
+    }
+
+    private void append(UUID target, String endpoint, int kind, String name, int opcode, byte[] payload) {
+        boolean flushNow = false;
+        boolean flushLater = false;
+        synchronized (this) {
+            Batch batch = batches.get(target);
+            if (batch == null) {
+                batch = new Batch(target, 256);
+                batches.put(target, batch);
+            }
+            try {
+                batch.out.writeUTF(endpoint);
+                batch.out.writeByte(kind);
+                if (kind != BROADCAST) {
+                    batch.out.writeUTF(name);
+                }
+                batch.out.writeByte(opcode);
+                batch.out.writeInt(payload.length);
+                batch.out.write(payload);
+            } catch (IOException e) {
+                // a ByteArrayOutputStream does not throw
+                throw new IllegalStateException(e);
+            }
+            batch.count++;
+            if (batch.bytes.size() >= maxBatchBytes) {
+                flushNow = true;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                flushLater = true;
+            }
+        }
+        try {
+            if (flushNow) {
+                sender.execute(this::flush);
+            } else if (flushLater) {
+                sender.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            // closed, the message is dropped
+        }
+    }
+
+    private void flush() {
+        List<Batch> full = new ArrayList<>();
+        synchronized (this) {
+            flushScheduled = false;
+            for (Map.Entry<UUID, Batch> entry : batches.entrySet()) {
+                Batch batch = entry.getValue();
+                if (batch.count > 0) {
+                    full.add(batch);
+                    entry.setValue(new Batch(batch.target, Math.min(batch.bytes.size(), maxBatchBytes)));
+                }
+            }
+        }
+        for (Batch batch : full) {
+            byte[] bytes = batch.bytes.toByteArray();
+            // the count goes last in the header
+            for (int i = 0; i < 4; i++) {
+                bytes[HEADER_BYTES - 1 - i] = (byte) (batch.count >>> (8 * i));
+            }
+            try {
+                if (batch.target.equals(EVERY_NODE)) {
+                    bus.send(bytes);
+                } else {
+                    bus.send(batch.target.toString(), bytes);
+                }
+                batchesSent.incrementAndGet();
+                messagesSent.addAndGet(batch.count);
+            } catch (RuntimeException e) {
+                LOGGER.error(e);
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            sender.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    private void receive(byte[] bytes) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                LOGGER.warn("Ignoring a cluster batch of version " + version + ", expected " + VERSION);
+                return;
+            }
+            UUID from = new UUID(in.readLong(), in.readLong());
+            if (from.equals(nodeId)) {
+                // sent by this node, which has delivered it already
+                return;
+            }
+            UUID target = new UUID(in.readLong(), in.readLong());
+            if (!target.equals(EVERY_NODE) && !target.equals(nodeId)) {
+                // a bus that cannot address nodes hands every batch to every node
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String endpointName = in.readUTF();
+                int kind = in.readUnsignedByte();
+                String name = kind == BROADCAST ? null : in.readUTF();
+                int opcode = in.readUnsignedByte();
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    // peers are not authenticated, a length past the batch must not size an allocation
+                    LOGGER.error("Malformed cluster batch, message of " + length + " bytes with " + in.available() + " left");
+                    return;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                Endpoint endpoint = endpoints.get(endpointName);
+                try {
+                    if (endpoint != null && !deliver(endpoint, kind, name, opcode, payload)) {
+                        // the key has left this node since the sender looked it up
+                        execute(() -> route(endpointName, name, opcode, payload, from));
+                    }
+                } catch (RuntimeException e) {
+                    // the rest of the batch is still delivered
+                    LOGGER.error("Failed to deliver a cluster message to " + endpointName, e);
+                }
+            }
+            messagesReceived.addAndGet(count);
+        } catch (IOException e) {
+            LOGGER.error("Malformed cluster batch", e);
+        }
+    }
+
+    /**
+     * @return {@code false} if the message was sent to a key no session of this node is bound to
+     */
+    private static boolean deliver(Endpoint endpoint, int kind, String name, int opcode, byte[] payload) {
+        int level = kind == TOPIC ? endpoint.topicRegistry.getCompressionLevel() : endpoint.sessionRegistry.getCompressionLevel();
+        PreparedMessage message = PreparedMessage.prepare(opcode, payload, true, level);
+        try {
+            switch (kind) {
+                case BROADCAST:
+                    endpoint.sessionRegistry.broadcast(message, null);
+                    return true;
+                case TOPIC:
+                    endpoint.topicRegistry.publish(name, message);
+                    return true;
+                case KEY:
+                    return endpoint.sessionRegistry.sendToLocal(name, message);
+                default:
+                    LOGGER.warn("Ignoring a cluster message of unknown kind " + kind);
+                    return true;
+            }
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * messages for one target, the header comes first and its count is filled in when it is sent
+     */
+    private final class Batch {
+        private final UUID target;
+        private final ByteArrayOutputStream bytes;
+        private final DataOutputStream out;
+        private int count;
+
+        private Batch(UUID target, int size) {
+            this.target = target;
+            this.bytes = new ByteArrayOutputStream(size);
+            this.out = new DataOutputStream(bytes);
+            try {
+                out.writeByte(VERSION);
+                out.writeLong(nodeId.getMostSignificantBits());
+                out.writeLong(nodeId.getLeastSignificantBits());
+                out.writeLong(target.getMostSignificantBits());
+                out.writeLong(target.getLeastSignificantBits());
+                out.writeInt(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * owners of recently looked up keys, the least recently used are dropped first
+     */
+    private static final class NearCache {
+        private final long ttlNanos;
+        private final LinkedHashMap<String, Owner> owners;
+
+        private NearCache(int maxSize, long ttlMillis) {
+            this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+            this.owners = new LinkedHashMap<String, Owner>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Owner> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private synchronized UUID get(String key) {
+            Owner owner = owners.get(key);
+            if (owner == null) {
+                return null;
+            }
+            if (System.nanoTime() - owner.cachedAt > ttlNanos) {
+                owners.remove(key);
+                return null;
+            }
+            return owner.node;
+        }
+
+        private synchronized void put(String key, UUID node) {
+            owners.put(key, new Owner(node, System.nanoTime()));
+        }
+
+        private synchronized void remove(String key) {
+            owners.remove(key);
+        }
+    }
+
+    private static final class Owner {
+        private final UUID node;
+        private final long cachedAt;
+
+        private Owner(UUID node, long cachedAt) {
+            this.node = node;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private static final class PendingMessage {
+        private final String endpoint;
+        private final int opcode;
+        private final byte[] payload;
+
+        private PendingMessage(String endpoint, int opcode, byte[] payload) {
+            this.endpoint = endpoint;
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Endpoint {
+        private final SessionRegistry sessionRegistry;
+        private final TopicRegistry topicRegistry;
+
+        private Endpoint(SessionRegistry sessionRegistry, TopicRegistry topicRegistry) {
+            this.sessionRegistry = sessionRegistry;
+            this.topicRegistry = topicRegistry;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.PromiseNotifier;
+import io.netty.util.internal.ThrowableUtil;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the {@link Session#sendConflated(Object, String) conflated} messages of one connection while it is not
+ * writable, one per key: a newer message replaces the pending one of its key in place, and the pending messages are
+ * written in the order their keys were first held once the connection is writable again. So a lagging client costs
+ * one message per key rather than one per update, and receives only the latest values.
+ * <p>
+ * Added to the end of the pipeline by the first conflated send of the session.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class ConflationHandler extends ChannelDuplexHandler {
+
+    private static final ClosedChannelException CLOSED = ThrowableUtil.unknownStackTrace(
+            new ClosedChannelException(), ConflationHandler.class, "handlerRemoved(...)");
+
+    /**
+     * only touched on the event loop
+     */
+    private final Map<Object, Pending> pending = new LinkedHashMap<>();
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ConflatedMessage)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        ConflatedMessage message = (ConflatedMessage) msg;
+        if (pending.isEmpty() && ctx.channel().isWritable()) {
+            ctx.write(message.frame, promise);
+            return;
+        }
+        // put keeps the position of a key already held
+        Pending replaced = pending.put(message.key, new Pending(message.frame, promise));
+        if (replaced != null) {
+            replaced.frame.release();
+            // the replaced message is delivered by the one replacing it
+            if (!replaced.promise.isVoid()) {
+                if (promise.isVoid()) {
+                    replaced.promise.trySuccess();
+                } else {
+                    promise.addListener(new PromiseNotifier<Void, ChannelFuture>(replaced.promise));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable() && !pending.isEmpty()) {
+            Iterator<Pending> iterator = pending.values().iterator();
+            // stop once the buffer is full again, what is left can still be replaced
+            while (iterator.hasNext() && ctx.channel().isWritable()) {
+                Pending next = iterator.next();
+                iterator.remove();
+                ctx.write(next.frame, next.promise);
+            }
+            ctx.flush();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        for (Pending next : pending.values()) {
+            next.frame.release();
+            if (!next.promise.isVoid()) {
+                next.promise.tryFailure(CLOSED);
+            }
+        }
+        pending.clear();
+    }
+
+    private static final class Pending {
+        private final WebSocketFrame frame;
+        private final ChannelPromise promise;
+
+        private Pending(WebSocketFrame frame, ChannelPromise promise) {
+            this.frame = frame;
+            this.promise = promise;
+        }
+    }
+
+    /**
+     * a frame and its key on the way to the handler, released like the frame if it never gets there
+     */
+    static final class ConflatedMessage implements ReferenceCounted {
+        private final Object key;
+        private final WebSocketFrame frame;
+
+        ConflatedMessage(Object key, WebSocketFrame frame) {
+            if (key == null) {
+                frame.release();
+                throw new IllegalArgumentException("key must not be null");
+            }
+            this.key = key;
+            this.frame = frame;
+        }
+
+        @Override
+        public int refCnt() {
+            return frame.refCnt();
+        }
+
+        @Override
+        public ConflatedMessage retain() {
+            frame.retain();
+            return this;
+        }
+
+        @Override
+        public ConflatedMessage retain(int increment) {
+            frame.retain(increment);
+            return this;
+        }
+
+        @Override
+        public ConflatedMessage touch() {
+            frame.touch();
+            return this;
+        }
+
+        @Override
+        public ConflatedMessage touch(Object hint) {
+            frame.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return frame.release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return frame.release(decrement);
+        }
+    }
+}
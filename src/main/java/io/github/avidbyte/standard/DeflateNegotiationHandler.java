@@ -0,0 +1,67 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionUtil;
+
+import java.util.Map;
+
+/**
+ * Reads the compression extensions the handshake response agreed on, marks the channel with
+ * {@link PreparedMessage#DEFLATE_KEY} if there is one and with {@link PreparedMessage#DEFLATE_WITHOUT_CONTEXT_KEY} if a
+ * message compressed on its own can be sent on it: the server
+ * starts every message with an empty context and uses the full window. Installed before the compression handler so it
+ * sees the response after the extension header was added, and removes itself afterwards.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class DeflateNegotiationHandler extends ChannelOutboundHandlerAdapter {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT = "server_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW = "server_max_window_bits";
+    private static final String MAX_WINDOW_BITS = "15";
+
+    private final int minPayloadSize;
+
+    /**
+     * @param minPayloadSize messages with less bytes are sent uncompressed, recorded as {@link PreparedMessage#DEFLATE_MIN_SIZE_KEY}
+     */
+    DeflateNegotiationHandler(int minPayloadSize) {
+        this.minPayloadSize = minPayloadSize;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof HttpResponse) {
+            String extensions = ((HttpResponse) msg).headers().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS);
+            if (extensions != null && !extensions.isEmpty()) {
+                ctx.channel().attr(PreparedMessage.DEFLATE_KEY).set(Boolean.TRUE);
+                if (minPayloadSize > 0) {
+                    ctx.channel().attr(PreparedMessage.DEFLATE_MIN_SIZE_KEY).set(minPayloadSize);
+                }
+                if (isDeflateWithoutContext(extensions)) {
+                    ctx.channel().attr(PreparedMessage.DEFLATE_WITHOUT_CONTEXT_KEY).set(Boolean.TRUE);
+                }
+            }
+            ctx.pipeline().remove(this);
+        }
+        ctx.write(msg, promise);
+    }
+
+    static boolean isDeflateWithoutContext(String extensions) {
+        for (WebSocketExtensionData extension : WebSocketExtensionUtil.extractExtensions(extensions)) {
+            if (PERMESSAGE_DEFLATE.equals(extension.name())) {
+                Map<String, String> parameters = extension.parameters();
+                String windowBits = parameters.get(SERVER_MAX_WINDOW);
+                return parameters.containsKey(SERVER_NO_CONTEXT) && (windowBits == null || MAX_WINDOW_BITS.equals(windowBits));
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.avidbyte.standard;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Where the endpoint callbacks of a connection run.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public enum ExecutionMode {
+
+    /**
+     * on the netty event loop of the connection
+     */
+    EVENT_LOOP,
+
+    /**
+     * on a thread of the {@link io.netty.util.concurrent.EventExecutorGroup}, each connection pinned to one thread
+     */
+    EXECUTOR_GROUP,
+
+    /**
+     * on virtual threads, callbacks of one connection still run one at a time and in order (requires a JDK with virtual threads)
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * on a shared work-stealing pool, callbacks of one connection still run one at a time and in order, but any free
+     * thread may pick the connection up instead of it being pinned to one thread
+     */
+    WORK_STEALING;
+
+    /**
+     * @param value                 event-loop, executor-group, virtual-threads or work-stealing, empty to derive it from useEventExecutorGroup
+     * @param useEventExecutorGroup legacy switch between executor-group and event-loop
+     * @return ExecutionMode
+     */
+    public static ExecutionMode parse(String value, boolean useEventExecutorGroup) {
+        if (StringUtils.isEmpty(value)) {
+            return useEventExecutorGroup ? EXECUTOR_GROUP : EVENT_LOOP;
+        }
+        String name = value.trim().toUpperCase().replace('-', '_');
+        for (ExecutionMode mode : values()) {
+            if (mode.name().equals(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown execution mode '" + value + "', expected one of: event-loop, executor-group, virtual-threads, work-stealing");
+    }
+}
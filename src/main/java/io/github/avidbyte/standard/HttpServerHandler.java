@@ -1,7 +1,7 @@
 package io.github.avidbyte.standard;
 
+import io.github.avidbyte.support.PathRouter;
 import io.github.avidbyte.support.ValueConstants;
-import io.github.avidbyte.support.WsPathMatcher;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
@@ -11,7 +11,6 @@ import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
-import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.AttributeKey;
 import io.netty.util.CharsetUtil;
@@ -19,7 +18,7 @@ import io.netty.util.concurrent.EventExecutorGroup;
 import org.springframework.beans.TypeMismatchException;
 import org.springframework.util.StringUtils;
 
-import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static io.netty.handler.codec.http.HttpHeaderNames.*;
 import static io.netty.handler.codec.http.HttpMethod.GET;
@@ -35,12 +34,26 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
     private final WebSocketEventServer webSocketEventServer;
     private final ServerEndpointConfig config;
     private final EventExecutorGroup eventExecutorGroup;
+    private final Executor handlerExecutor;
+    private final InboundMemoryBudget inboundMemoryBudget;
     private final boolean isCors;
+    private MethodMapping methodMapping;
+    private Object implement;
 
-    public HttpServerHandler(WebSocketEventServer webSocketEventServer, ServerEndpointConfig config, EventExecutorGroup eventExecutorGroup, boolean isCors) {
+    /**
+     * @param webSocketEventServer webSocketEventServer
+     * @param config               config
+     * @param eventExecutorGroup   group the websocket handler runs on, {@code null} to run it on the event loop
+     * @param handlerExecutor      executor the callbacks of each session are run on in order and with a bounded queue, {@code null} to run them on the handler's thread
+     * @param inboundMemoryBudget  budget the frames of every session are charged to, {@code null} if there is none
+     * @param isCors               isCors
+     */
+    public HttpServerHandler(WebSocketEventServer webSocketEventServer, ServerEndpointConfig config, EventExecutorGroup eventExecutorGroup, Executor handlerExecutor, InboundMemoryBudget inboundMemoryBudget, boolean isCors) {
         this.webSocketEventServer = webSocketEventServer;
         this.config = config;
         this.eventExecutorGroup = eventExecutorGroup;
+        this.handlerExecutor = handlerExecutor;
+        this.inboundMemoryBudget = inboundMemoryBudget;
         this.isCors = isCors;
     }
 
@@ -62,16 +75,20 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        webSocketEventServer.doOnError(ctx.channel(), cause);
+        if (methodMapping != null) {
+            webSocketEventServer.doOnError(ctx.channel(), cause, methodMapping, implement);
+        }
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        webSocketEventServer.doOnClose(ctx.channel());
+        if (methodMapping != null) {
+            webSocketEventServer.doOnClose(ctx.channel(), methodMapping, implement);
+        }
         super.channelInactive(ctx);
     }
 
-    private void handleHttpRequest(ChannelHandlerContext ctx, FullHttpRequest req) {
+    private void handleHttpRequest(ChannelHandlerContext ctx, FullHttpRequest req) throws Exception {
         FullHttpResponse res;
         // Handle a bad request.
         if (!req.decoderResult().isSuccess()) {
@@ -106,20 +123,13 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         Channel channel = ctx.channel();
 
         //path match
-        String pattern = null;
-        Set<WsPathMatcher> pathMatcherSet = webSocketEventServer.getPathMatcherSet();
-        for (WsPathMatcher pathMatcher : pathMatcherSet) {
-            if (pathMatcher.matchAndExtract(decoder, channel)) {
-                pattern = pathMatcher.getPattern();
-                break;
-            }
-        }
-
-        if (pattern == null) {
+        PathRouter.Match<MethodMapping> match = webSocketEventServer.getRouter().match(decoder, channel);
+        if (match == null) {
             res = new DefaultFullHttpResponse(HTTP_1_1, NOT_FOUND);
             sendHttpResponse(ctx, req, res);
             return;
         }
+        MethodMapping methodMapping = match.getValue();
 
         if (!req.headers().contains(UPGRADE) || !req.headers().contains(SEC_WEBSOCKET_KEY) || !req.headers().contains(SEC_WEBSOCKET_VERSION)) {
             res = new DefaultFullHttpResponse(HTTP_1_1, FORBIDDEN);
@@ -127,10 +137,19 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
             return;
         }
 
+        Object implement = webSocketEventServer.newEndpoint(channel, methodMapping);
+        if (implement == null) {
+            res = new DefaultFullHttpResponse(HTTP_1_1, INTERNAL_SERVER_ERROR);
+            sendHttpResponse(ctx, req, res);
+            return;
+        }
+        this.methodMapping = methodMapping;
+        this.implement = implement;
+
         String subprotocols = null;
 
-        if (webSocketEventServer.hasBeforeHandshake(channel, pattern)) {
-            webSocketEventServer.doBeforeHandshake(channel, req, pattern);
+        if (methodMapping.getBeforeHandshake() != null) {
+            webSocketEventServer.doBeforeHandshake(channel, req, methodMapping, implement);
             if (!channel.isActive()) {
                 return;
             }
@@ -153,21 +172,60 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
                 pipeline.addLast(new IdleStateHandler(config.getReaderIdleTimeSeconds(), config.getWriterIdleTimeSeconds(), config.getAllIdleTimeSeconds()));
             }
             if (config.isUseCompressionHandler()) {
-                pipeline.addLast(new WebSocketServerCompressionHandler());
+                WebSocketCompressionHandler compressionHandler = new WebSocketCompressionHandler(config);
+                pipeline.addLast(new DeflateNegotiationHandler(config.getCompressionMinPayloadSize()));
+                pipeline.addLast(compressionHandler);
+                // the request has already passed the place the handler was added at
+                compressionHandler.negotiate(pipeline.context(compressionHandler), req);
+            }
+            InboundBudgetHandler inboundBudget = null;
+            if (inboundMemoryBudget != null) {
+                inboundBudget = new InboundBudgetHandler(inboundMemoryBudget, channel, !config.isStreamFragments());
+                pipeline.addLast(inboundBudget);
+            }
+            if (!config.isStreamFragments()) {
+                pipeline.addLast(new WebSocketFrameAggregator(config.getMaxMessageSize()));
             }
-            pipeline.addLast(new WebSocketFrameAggregator(Integer.MAX_VALUE));
-            if (config.isUseEventExecutorGroup()) {
-                pipeline.addLast(eventExecutorGroup, new WebSocketServerHandler(webSocketEventServer));
+            Executor sessionExecutor = handlerExecutor == null ? null : new OrderedSessionExecutor(handlerExecutor, channel, config.getSessionQueueCapacity());
+            WebSocketServerHandler webSocketServerHandler = new WebSocketServerHandler(webSocketEventServer, methodMapping, implement, sessionExecutor, inboundBudget);
+            if (eventExecutorGroup != null) {
+                pipeline.addLast(eventExecutorGroup, webSocketServerHandler);
             } else {
-                pipeline.addLast(new WebSocketServerHandler(webSocketEventServer));
+                pipeline.addLast(webSocketServerHandler);
+            }
+            if (config.getReplayBufferMessages() > 0) {
+                // before the slow consumer handler, which may drop messages the client then never gets
+                ReplayRegistry replayRegistry = methodMapping.getReplayRegistry();
+                ReplayHandler replayHandler = new ReplayHandler(replayRegistry, replayRegistry.open(channel,
+                        config.getReplayBufferMessages(), config.getReplayBufferBytes(), config.getReplayGraceMillis()));
+                pipeline.addLast(replayHandler);
+                channel.attr(WebSocketEventServer.SESSION_KEY).get().setReplayHandler(replayHandler);
+            }
+            if (config.getSlowConsumerPolicy() != SlowConsumerPolicy.NONE) {
+                // last, so it sees the messages of the session before anything encodes them
+                SlowConsumerHandler slowConsumerHandler = new SlowConsumerHandler(config.getSlowConsumerPolicy(),
+                        config.getSlowConsumerQueueCapacity(), config.getSlowConsumerTimeoutMillis());
+                pipeline.addLast(slowConsumerHandler);
+                channel.attr(WebSocketEventServer.SESSION_KEY).get().setSlowConsumerHandler(slowConsumerHandler);
             }
-            String finalPattern = pattern;
             webSocketServerHandshaker.handshake(channel, req).addListener(future -> {
                 if (future.isSuccess()) {
                     if (isCors) {
                         pipeline.remove(CorsHandler.class);
                     }
-                    webSocketEventServer.doOnOpen(channel, req, finalPattern);
+                    if (sessionExecutor == null) {
+                        webSocketEventServer.doOnOpen(channel, req, methodMapping, implement);
+                    } else {
+                        // the request is released once channelRead0 returns
+                        req.retain();
+                        webSocketServerHandler.dispatch(() -> {
+                            try {
+                                webSocketEventServer.doOnOpen(channel, req, methodMapping, implement);
+                            } finally {
+                                req.release();
+                            }
+                        });
+                    }
                 } else {
                     webSocketServerHandshaker.close(channel, new CloseWebSocketFrame());
                 }
@@ -0,0 +1,65 @@
+package io.github.avidbyte.standard;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Connects the nodes of one JVM that use the same cluster name, e.g. several application contexts in a test. A batch
+ * is handed to the receivers of the other nodes, or of the one node it is for, on the sending thread.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class InMemoryClusterBus implements ClusterBus {
+
+    private static final Map<String, Map<String, InMemoryClusterBus>> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final String cluster;
+    private volatile String node;
+    private volatile Consumer<byte[]> receiver;
+
+    /**
+     * @param cluster name of the cluster to join
+     */
+    public InMemoryClusterBus(String cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public void start(String node, Consumer<byte[]> receiver) {
+        this.node = node;
+        this.receiver = receiver;
+        CLUSTERS.computeIfAbsent(cluster, name -> new ConcurrentHashMap<>()).put(node, this);
+    }
+
+    @Override
+    public void send(byte[] batch) {
+        Map<String, InMemoryClusterBus> nodes = CLUSTERS.get(cluster);
+        if (nodes == null) {
+            return;
+        }
+        for (InMemoryClusterBus other : nodes.values()) {
+            if (other != this) {
+                other.receiver.accept(batch);
+            }
+        }
+    }
+
+    @Override
+    public void send(String node, byte[] batch) {
+        Map<String, InMemoryClusterBus> nodes = CLUSTERS.get(cluster);
+        InMemoryClusterBus other = nodes == null ? null : nodes.get(node);
+        if (other != null) {
+            other.receiver.accept(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        Map<String, InMemoryClusterBus> nodes = CLUSTERS.get(cluster);
+        if (nodes != null && node != null) {
+            nodes.remove(node, this);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.avidbyte.standard;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link SessionDirectory} in the memory of one JVM, for nodes sharing the instance, e.g. several application
+ * contexts in a test, and as the reference for other implementations.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class InMemorySessionDirectory implements SessionDirectory {
+
+    private final Map<String, String> owners = new ConcurrentHashMap<>();
+
+    @Override
+    public void register(String key, String node) {
+        owners.put(key, node);
+    }
+
+    @Override
+    public void unregister(String key, String node) {
+        owners.remove(key, node);
+    }
+
+    @Override
+    public String lookup(String key) {
+        return owners.get(key);
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return owners.size();
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Charges every decoded frame of one connection to the {@link InboundMemoryBudget}. Installed after decompression and
+ * before the aggregator, the bytes are given back by {@link WebSocketServerHandler} once the callback of the frame has
+ * returned, or all at once when the connection goes away.
+ * <p>
+ * With the aggregator, the fragments of a message are only given back once the whole message has been handled, so a
+ * connection in the middle of one is not suspended while it holds no more than its share of the budget.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class InboundBudgetHandler extends ChannelInboundHandlerAdapter {
+
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final InboundMemoryBudget budget;
+    private final Channel channel;
+    private final boolean aggregating;
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicBoolean suspended = new AtomicBoolean();
+    /**
+     * whether the aggregator holds the first fragments of a message the connection has not finished sending
+     */
+    private volatile boolean partialMessage;
+
+    /**
+     * @param budget      budget
+     * @param channel     channel
+     * @param aggregating whether a {@link io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator} follows
+     */
+    InboundBudgetHandler(InboundMemoryBudget budget, Channel channel, boolean aggregating) {
+        this.budget = budget;
+        this.channel = channel;
+        this.aggregating = aggregating;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        budget.register(this);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof WebSocketFrame) {
+            WebSocketFrame frame = (WebSocketFrame) msg;
+            if (aggregating && isDataFrame(frame)) {
+                partialMessage = !frame.isFinalFragment();
+                if (partialMessage && suspended.get()) {
+                    // frames already read keep coming after a suspension, the message may be able to complete
+                    budget.exempt(this);
+                }
+            }
+            acquire(frame.content().readableBytes());
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        close();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        close();
+    }
+
+    /**
+     * give back the bytes of a frame whose callback has returned, ignored once the connection has gone away
+     *
+     * @param bytes bytes
+     */
+    void release(long bytes) {
+        long current;
+        do {
+            current = outstanding.get();
+            if (current == CLOSED) {
+                return;
+            }
+        } while (!outstanding.compareAndSet(current, current - bytes));
+        budget.released(bytes);
+    }
+
+    long getOutstanding() {
+        long current = outstanding.get();
+        return current == CLOSED ? 0 : current;
+    }
+
+    boolean holdsPartialMessage() {
+        return partialMessage;
+    }
+
+    boolean isSuspended() {
+        return suspended.get();
+    }
+
+    boolean suspend() {
+        if (suspended.compareAndSet(false, true)) {
+            ReadThrottle.update(channel, ReadThrottle.Source.MEMORY_BUDGET, suspended);
+            return true;
+        }
+        return false;
+    }
+
+    void resume() {
+        if (suspended.compareAndSet(true, false)) {
+            ReadThrottle.update(channel, ReadThrottle.Source.MEMORY_BUDGET, suspended);
+        }
+    }
+
+    private void acquire(long bytes) {
+        long current;
+        do {
+            current = outstanding.get();
+            if (current == CLOSED) {
+                return;
+            }
+        } while (!outstanding.compareAndSet(current, current + bytes));
+        budget.acquired(this, bytes);
+    }
+
+    private static boolean isDataFrame(WebSocketFrame frame) {
+        return frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame
+                || frame instanceof ContinuationWebSocketFrame;
+    }
+
+    private void close() {
+        long remaining = outstanding.getAndSet(CLOSED);
+        if (remaining != CLOSED) {
+            suspended.set(false);
+            budget.unregister(this);
+            budget.released(remaining);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.avidbyte.standard;
+
+import org.springframework.util.StringUtils;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the inbound frame bytes held at once by every connection of every server, from the moment a frame is
+ * decoded, through aggregation and the executor queues, until its callback has returned.
+ * <p>
+ * A read that takes the total over the budget stops reading on a channel, which channel depends on the
+ * {@link Policy}. Suspended channels start reading again in the order they were suspended once the total is back
+ * under the budget, so a few clients sending large bursts are slowed down instead of exhausting the heap.
+ * <p>
+ * A connection in the middle of a message being aggregated is not suspended while it holds no more than its share of
+ * the budget, the budget divided by the connections: its bytes are only given back once the message is complete, so
+ * stopping it could leave every connection waiting on messages that can not complete. The shares add up to the budget,
+ * so such connections alone never exceed it. A connection past its share is suspended like any other, a client sending
+ * fragments that never finish is bounded by the budget even with an unbounded max-message-size.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class InboundMemoryBudget {
+
+    /**
+     * which channel stops reading when the budget is exceeded
+     */
+    public enum Policy {
+
+        /**
+         * the channel whose read exceeded the budget stops, the channel suspended longest resumes first
+         */
+        OLDEST_FIRST,
+
+        /**
+         * the channel holding the most buffered bytes stops, finding it scans every connection
+         */
+        LARGEST_FIRST;
+
+        /**
+         * @param value oldest-first or largest-first, empty for oldest-first
+         * @return Policy
+         */
+        public static Policy parse(String value) {
+            if (StringUtils.isEmpty(value)) {
+                return OLDEST_FIRST;
+            }
+            String name = value.trim().toUpperCase().replace('-', '_');
+            for (Policy policy : values()) {
+                if (policy.name().equals(name)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown inbound memory policy '" + value + "', expected one of: oldest-first, largest-first");
+        }
+    }
+
+    private final long limit;
+    private final Policy policy;
+    private final LongAdder used = new LongAdder();
+    private final Queue<InboundBudgetHandler> suspended = new ConcurrentLinkedQueue<>();
+    private final Set<InboundBudgetHandler> handlers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param limit  bytes
+     * @param policy policy
+     */
+    public InboundMemoryBudget(long limit, Policy policy) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        this.limit = limit;
+        this.policy = policy;
+    }
+
+    /**
+     * @return inbound frame bytes currently held
+     */
+    public long getUsed() {
+        return used.sum();
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return connections currently not reading because of the budget
+     */
+    public int getSuspendedCount() {
+        return suspended.size();
+    }
+
+    void register(InboundBudgetHandler handler) {
+        handlers.add(handler);
+    }
+
+    void unregister(InboundBudgetHandler handler) {
+        handlers.remove(handler);
+        suspended.remove(handler);
+        resumeIfUnderLimit();
+    }
+
+    void acquired(InboundBudgetHandler handler, long bytes) {
+        used.add(bytes);
+        if (used.sum() <= limit) {
+            return;
+        }
+        // a connection finishing a message within its share stops once it has sent the last fragment
+        InboundBudgetHandler victim = mayFinish(handler) ? null : handler;
+        if (policy == Policy.LARGEST_FIRST) {
+            for (InboundBudgetHandler candidate : handlers) {
+                if (!candidate.isSuspended() && !mayFinish(candidate)
+                        && (victim == null || candidate.getOutstanding() > victim.getOutstanding())) {
+                    victim = candidate;
+                }
+            }
+        }
+        if (victim != null && victim.suspend()) {
+            suspended.offer(victim);
+            // it may have started a message while being picked
+            exempt(victim);
+            // memory may have been freed before the channel was queued
+            resumeIfUnderLimit();
+        }
+    }
+
+    /**
+     * resume a suspended connection that has started a message within its share, its bytes are held until the message
+     * completes
+     *
+     * @param handler handler
+     */
+    void exempt(InboundBudgetHandler handler) {
+        if (mayFinish(handler)) {
+            suspended.remove(handler);
+            handler.resume();
+        }
+    }
+
+    /**
+     * @return whether the connection is in the middle of a message and holds no more than its share of the budget
+     */
+    private boolean mayFinish(InboundBudgetHandler handler) {
+        return handler.holdsPartialMessage() && handler.getOutstanding() <= limit / Math.max(1, handlers.size());
+    }
+
+    void released(long bytes) {
+        used.add(-bytes);
+        resumeIfUnderLimit();
+    }
+
+    private void resumeIfUnderLimit() {
+        InboundBudgetHandler handler;
+        while (used.sum() < limit && (handler = suspended.poll()) != null) {
+            handler.resume();
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An append-only journal of outbound messages in memory-mapped segment files, so that messages can be sent again
+ * after a reconnect or a restart of the node.
+ * <p>
+ * Messages are numbered from 1 and stored as complete, uncompressed WebSocket frames. Each segment is a data file of
+ * frames, {@code <first seq>.log}, and an index file of the offset each frame ends at, {@code <first seq>.idx}.
+ * When a segment is full the next one starts, and past {@code maxSegments} the oldest is deleted. A frame becomes
+ * visible once its index entry is written, so after a crash the journal continues after the last complete frame.
+ * <p>
+ * {@link #replay(Session, long)} writes the frames of each segment as one buffer over the mapping. Nothing is copied
+ * and nothing is allocated per message, unless the session keeps a replay buffer, which numbers every message it is
+ * sent and so gets them one by one. Appends are serialized, reads may run concurrently with them.
+ * <p>
+ * Attach one to {@link SessionRegistry#setJournal(MessageJournal)} or {@link TopicRegistry#setJournal(String, MessageJournal)},
+ * or set {@code journal-directory} on the endpoint.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class MessageJournal implements Closeable {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(MessageJournal.class);
+
+    private static final String DATA_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int FIN = 0x80;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    /**
+     * oldest first, replaced as a whole
+     */
+    private volatile Segment[] segments;
+    private boolean closed;
+
+    /**
+     * open the journal in the directory, continuing after its last message
+     *
+     * @param directory    directory of this journal only, created if missing
+     * @param segmentBytes size of a data file, at least the largest frame
+     * @param maxSegments  segments kept, the oldest are deleted, also those left over past it
+     * @throws IOException if the directory cannot be read or a segment cannot be mapped
+     */
+    public MessageJournal(Path directory, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes < 1024 || maxSegments < 1) {
+            throw new IllegalArgumentException("segmentBytes must be at least 1024 and maxSegments positive, were " + segmentBytes + " and " + maxSegments);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        List<Long> baseSeqs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + DATA_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    baseSeqs.add(Long.parseLong(name.substring(0, name.length() - DATA_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring " + file + " in journal " + directory);
+                }
+            }
+        }
+        baseSeqs.sort(null);
+        // the limit may have been lowered since the segments were written
+        int drop = Math.max(0, baseSeqs.size() - maxSegments);
+        for (long baseSeq : baseSeqs.subList(0, drop)) {
+            Segment.delete(directory, baseSeq);
+        }
+        List<Segment> opened = new ArrayList<>();
+        for (long baseSeq : baseSeqs.subList(drop, baseSeqs.size())) {
+            opened.add(Segment.open(directory, baseSeq, 0));
+        }
+        if (opened.isEmpty()) {
+            opened.add(Segment.open(directory, 1, segmentBytes));
+        }
+        this.segments = opened.toArray(new Segment[0]);
+    }
+
+    /**
+     * @return number of the oldest message kept, {@link #lastSeq()} + 1 if none
+     */
+    public long firstSeq() {
+        Segment[] segments = this.segments;
+        for (Segment segment : segments) {
+            if (segment.count > 0) {
+                return segment.baseSeq;
+            }
+        }
+        return lastSeq() + 1;
+    }
+
+    /**
+     * @return number of the last message, 0 before the first
+     */
+    public long lastSeq() {
+        Segment[] segments = this.segments;
+        Segment last = segments[segments.length - 1];
+        return last.baseSeq + last.count - 1;
+    }
+
+    /**
+     * @param text text
+     * @return number of the message
+     */
+    public long appendText(CharSequence text) {
+        byte[] payload = text.toString().getBytes(StandardCharsets.UTF_8);
+        return append(PreparedMessage.OPCODE_TEXT, Unpooled.wrappedBuffer(payload), false);
+    }
+
+    /**
+     * @param bytes bytes
+     * @return number of the message
+     */
+    public long appendBinary(byte[] bytes) {
+        return append(PreparedMessage.OPCODE_BINARY, Unpooled.wrappedBuffer(bytes), false);
+    }
+
+    /**
+     * @param message message, its frame is copied as it is
+     * @return number of the message
+     */
+    public long append(PreparedMessage message) {
+        return append(0, message.plainFrame(), true);
+    }
+
+    /**
+     * append a message on its way to the sessions, which must get it even if the journal can not keep it
+     *
+     * @param message message
+     * @return number of the message, -1 if it was not kept, the failure is logged
+     */
+    long tryAppend(PreparedMessage message) {
+        try {
+            return append(message);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Message not kept in journal " + directory, e);
+            return -1;
+        }
+    }
+
+    private synchronized long append(int opcode, ByteBuf content, boolean encoded) {
+        if (closed) {
+            throw new IllegalStateException("Journal " + directory + " is closed");
+        }
+        int length = content.readableBytes();
+        int frameLength = encoded ? length : headerLength(length) + length;
+        if (frameLength > segmentBytes) {
+            throw new IllegalArgumentException("A frame of " + frameLength + " bytes does not fit a journal segment of " + segmentBytes + " bytes");
+        }
+        Segment segment = segments[segments.length - 1];
+        if (!segment.fits(frameLength)) {
+            segment = roll(segment);
+        }
+        ByteBuffer out = segment.writer;
+        out.clear();
+        // getBytes fills what remains
+        out.position(segment.end).limit(segment.end + frameLength);
+        if (!encoded) {
+            out.put((byte) (FIN | opcode));
+            if (length < 126) {
+                out.put((byte) length);
+            } else if (length <= 0xFFFF) {
+                out.put((byte) 126);
+                out.putShort((short) length);
+            } else {
+                out.put((byte) 127);
+                out.putLong(length);
+            }
+        }
+        content.getBytes(content.readerIndex(), out);
+        segment.end = out.position();
+        segment.index.putInt(segment.count * 4, segment.end);
+        // publishes the frame to readers
+        segment.count++;
+        return segment.baseSeq + segment.count - 1;
+    }
+
+    private Segment roll(Segment full) {
+        Segment next;
+        try {
+            next = Segment.open(directory, full.baseSeq + full.count, segmentBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start a segment of journal " + directory, e);
+        }
+        Segment[] current = segments;
+        int drop = Math.max(0, current.length + 1 - maxSegments);
+        Segment[] rolled = Arrays.copyOfRange(current, drop, current.length + 1);
+        rolled[rolled.length - 1] = next;
+        segments = rolled;
+        for (int i = 0; i < drop; i++) {
+            // a replay still writing from it keeps its mapping
+            current[i].delete();
+        }
+        return next;
+    }
+
+    /**
+     * @param seq number of the message
+     * @return the frame, a view of the mapping, {@code null} if it is not kept
+     */
+    public ByteBuf read(long seq) {
+        for (Segment segment : segments) {
+            int count = segment.count;
+            if (seq >= segment.baseSeq && seq < segment.baseSeq + count) {
+                int i = (int) (seq - segment.baseSeq);
+                return segment.frames(i, i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * write the messages after {@code afterSeq} to the session, the frames of each segment as one buffer over the
+     * mapping. The {@link SlowConsumerPolicy} never drops them, the client asked for them. Messages appended meanwhile
+     * may or may not be written
+     *
+     * @param session  session
+     * @param afterSeq number of the last message the client has
+     * @return number of the last message written, {@code afterSeq} if there were none or the session is closed, -1 if
+     * messages after {@code afterSeq} are no longer kept and the client needs a full resync
+     */
+    public long replay(Session session, long afterSeq) {
+        Segment[] segments = this.segments;
+        if (afterSeq + 1 < firstSeq(segments)) {
+            return -1;
+        }
+        Channel channel = session.channel();
+        if (!channel.isActive()) {
+            return afterSeq;
+        }
+        // the replay buffer of the session numbers what it is sent, message by message
+        boolean perMessage = channel.hasAttr(ReplayHandler.RECORDING_KEY);
+        List<Object> messages = new ArrayList<>();
+        long last = afterSeq;
+        for (Segment segment : segments) {
+            int count = segment.count;
+            long segmentLast = segment.baseSeq + count - 1;
+            if (segmentLast <= afterSeq) {
+                continue;
+            }
+            int from = (int) Math.max(0, afterSeq + 1 - segment.baseSeq);
+            if (perMessage) {
+                for (int i = from; i < count; i++) {
+                    messages.add(segment.message(i));
+                }
+            } else {
+                messages.add(segment.frames(from, count));
+            }
+            last = segmentLast;
+        }
+        if (messages.isEmpty()) {
+            return last;
+        }
+        SlowConsumerHandler slowConsumerHandler = session.getSlowConsumerHandler();
+        Runnable write = () -> {
+            for (Object message : messages) {
+                channel.write(message, channel.voidPromise());
+            }
+            channel.flush();
+        };
+        if (slowConsumerHandler == null) {
+            write.run();
+        } else if (channel.eventLoop().inEventLoop()) {
+            slowConsumerHandler.writeExempt(write);
+        } else {
+            try {
+                channel.eventLoop().execute(() -> slowConsumerHandler.writeExempt(write));
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down, so is the channel
+                return afterSeq;
+            }
+        }
+        return last;
+    }
+
+    private static long firstSeq(Segment[] segments) {
+        for (Segment segment : segments) {
+            if (segment.count > 0) {
+                return segment.baseSeq;
+            }
+        }
+        Segment last = segments[segments.length - 1];
+        return last.baseSeq + last.count;
+    }
+
+    /**
+     * write the mapped pages to disk, otherwise the operating system does so in its own time, which survives a crash
+     * of the process but not of the machine
+     */
+    public void force() {
+        for (Segment segment : segments) {
+            segment.data.force();
+            segment.index.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            force();
+        }
+    }
+
+    private static int headerLength(int length) {
+        return length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+    }
+
+    /**
+     * a data file and its index, mapped whole
+     */
+    private static final class Segment {
+        private final long baseSeq;
+        private final Path dataFile;
+        private final Path indexFile;
+        private final MappedByteBuffer data;
+        private final MappedByteBuffer index;
+
+        /**
+         * position and limit are only used by the appending thread
+         */
+        private final ByteBuffer writer;
+
+        /**
+         * written by the appending thread only, read by any
+         */
+        private volatile int count;
+        private int end;
+
+        private Segment(long baseSeq, Path dataFile, Path indexFile, MappedByteBuffer data, MappedByteBuffer index) {
+            this.baseSeq = baseSeq;
+            this.dataFile = dataFile;
+            this.indexFile = indexFile;
+            this.data = data;
+            this.index = index;
+            this.writer = data.duplicate();
+            // the index is filled from the start, its first zero is the end
+            int low = 0;
+            int high = index.capacity() / 4;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (index.getInt(middle * 4) != 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            this.count = low;
+            this.end = low == 0 ? 0 : index.getInt((low - 1) * 4);
+        }
+
+        /**
+         * @param size size of a new data file, 0 to open an existing one
+         */
+        private static Segment open(Path directory, long baseSeq, int size) throws IOException {
+            Path dataFile = dataFile(directory, baseSeq);
+            Path indexFile = indexFile(directory, baseSeq);
+            long dataSize = size > 0 ? size : Files.size(dataFile);
+            // a frame takes at least 2 bytes, most take far more
+            long indexSize = size > 0 ? Math.max(4096, size / 4) : Files.exists(indexFile) ? Files.size(indexFile) : Math.max(4096, dataSize / 4);
+            return new Segment(baseSeq, dataFile, indexFile, map(dataFile, dataSize), map(indexFile, indexSize));
+        }
+
+        private static Path dataFile(Path directory, long baseSeq) {
+            return directory.resolve(String.format("%020d", baseSeq) + DATA_SUFFIX);
+        }
+
+        private static Path indexFile(Path directory, long baseSeq) {
+            return directory.resolve(String.format("%020d", baseSeq) + INDEX_SUFFIX);
+        }
+
+        private static MappedByteBuffer map(Path file, long size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                // the mapping stays valid after the file is closed
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private boolean fits(int frameLength) {
+            return end + frameLength <= data.capacity() && (count + 1) * 4 <= index.capacity();
+        }
+
+        /**
+         * @return frames {@code from} to {@code to} (exclusive) as one buffer over the mapping
+         */
+        private ByteBuf frames(int from, int to) {
+            int start = from == 0 ? 0 : index.getInt((from - 1) * 4);
+            int stop = index.getInt((to - 1) * 4);
+            ByteBuffer region = data.duplicate();
+            region.limit(stop).position(start);
+            return Unpooled.wrappedBuffer(region.slice());
+        }
+
+        /**
+         * @param i index of the message in this segment
+         * @return the message as a frame over the payload in the mapping
+         */
+        private WebSocketFrame message(int i) {
+            int start = i == 0 ? 0 : index.getInt((i - 1) * 4);
+            int stop = index.getInt(i * 4);
+            int opcode = data.get(start) & 0x0F;
+            int lengthCode = data.get(start + 1) & 0x7F;
+            int headerLength = lengthCode < 126 ? 2 : lengthCode == 126 ? 4 : 10;
+            ByteBuffer region = data.duplicate();
+            region.limit(stop).position(start + headerLength);
+            ByteBuf payload = Unpooled.wrappedBuffer(region.slice());
+            return opcode == PreparedMessage.OPCODE_TEXT ? new TextWebSocketFrame(payload) : new BinaryWebSocketFrame(payload);
+        }
+
+        private void delete() {
+            delete(dataFile, indexFile);
+        }
+
+        private static void delete(Path directory, long baseSeq) {
+            delete(dataFile(directory, baseSeq), indexFile(directory, baseSeq));
+        }
+
+        private static void delete(Path dataFile, Path indexFile) {
+            try {
+                Files.deleteIfExists(dataFile);
+                Files.deleteIfExists(indexFile);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete journal segment " + dataFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.avidbyte.standard;
+
+import io.github.avidbyte.exception.DeploymentException;
+import io.github.avidbyte.support.MethodArgumentResolver;
+import io.netty.channel.Channel;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.core.MethodParameter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Invokes an endpoint method through a {@link MethodHandle} compiled once at registration.
+ * <p>
+ * The argument resolvers are folded into the handle, so a call is a straight chain of
+ * {@code resolver -> ... -> endpoint method} with no {@code Object[]} argument array and no reflective
+ * {@link Method#invoke} on the message path. Exceptions thrown by resolvers or the endpoint method propagate unwrapped.
+ * <p>
+ * The JIT only inlines {@code invokeExact} through a handle it can treat as a constant, which an instance field is
+ * not. So every handle gets a small generated subclass that keeps it in a {@code static final} field. Where a class
+ * can not be defined, the handle is kept in an instance field instead.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+abstract class MethodInvoker {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(MethodInvoker.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, Channel.class, Object.class);
+
+    private static final MethodHandle RESOLVE_ARGUMENT;
+
+    private static final String INTERNAL_NAME = Type.getInternalName(MethodInvoker.class);
+
+    private static final AtomicInteger GENERATED = new AtomicInteger();
+
+    /**
+     * handles of generated classes that have not been initialized yet, by internal class name
+     */
+    private static final Map<String, MethodHandle> PENDING = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            RESOLVE_ARGUMENT = LOOKUP.findVirtual(MethodArgumentResolver.class, "resolveArgument",
+                    MethodType.methodType(Object.class, MethodParameter.class, Channel.class, Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * compile an invoker, the parameters of the method are resolved by the resolver at the same index
+     *
+     * @param method     endpoint method, may be {@code null}
+     * @param parameters parameters of the method
+     * @param resolvers  resolvers of the parameters
+     * @return MethodInvoker, {@code null} if method is {@code null}
+     * @throws DeploymentException if the method can not be accessed
+     */
+    static MethodInvoker compile(Method method, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) throws DeploymentException {
+        if (method == null) {
+            return null;
+        }
+        MethodHandle handle = compose(method, parameters, resolvers);
+        try {
+            return generate(handle);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            LOGGER.debug("Falling back to a bound invoker for " + method, e);
+            return new Bound(handle);
+        }
+    }
+
+    /**
+     * @return (Object implement, Channel channel, Object object)void
+     */
+    static MethodHandle compose(Method method, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) throws DeploymentException {
+        MethodHandle target;
+        try {
+            // the method is public but the endpoint class itself may not be
+            method.setAccessible(true);
+            target = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new DeploymentException("MethodMapping.methodNotAccessible " + method.getName(), e);
+        }
+        int count = parameters.length;
+        target = target.asType(MethodType.genericMethodType(count + 1).changeReturnType(void.class));
+        if (count == 0) {
+            return MethodHandles.dropArguments(target, 1, Channel.class, Object.class);
+        }
+        // replace every argument with (Channel, Object) -> resolver.resolveArgument(parameter, channel, object),
+        // from the last one so the positions of the preceding arguments do not move
+        for (int i = count - 1; i >= 0; i--) {
+            MethodHandle resolve = MethodHandles.insertArguments(RESOLVE_ARGUMENT.bindTo(resolvers[i]), 0, parameters[i]);
+            target = MethodHandles.collectArguments(target, i + 1, resolve);
+        }
+        // (implement, channel, object, channel, object, ...) -> (implement, channel, object)
+        int[] reorder = new int[1 + count * 2];
+        for (int i = 0; i < count; i++) {
+            reorder[1 + i * 2] = 1;
+            reorder[2 + i * 2] = 2;
+        }
+        return MethodHandles.permuteArguments(target, INVOKER_TYPE, reorder);
+    }
+
+    /**
+     * define {@code final class MethodInvoker$$N extends MethodInvoker} whose {@code static final} field holds the
+     * handle, in this package and class loader
+     */
+    private static MethodInvoker generate(MethodHandle handle) throws ReflectiveOperationException {
+        String name = INTERNAL_NAME + "$$" + GENERATED.incrementAndGet();
+        String handleDescriptor = Type.getDescriptor(MethodHandle.class);
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, name, null, INTERNAL_NAME, null);
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "HANDLE", handleDescriptor, null, null).visitEnd();
+
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        init.visitCode();
+        init.visitLdcInsn(name);
+        init.visitMethodInsn(Opcodes.INVOKESTATIC, INTERNAL_NAME, "takeHandle", "(Ljava/lang/String;)" + handleDescriptor, false);
+        init.visitFieldInsn(Opcodes.PUTSTATIC, name, "HANDLE", handleDescriptor);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor constructor = writer.visitMethod(0, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, INTERNAL_NAME, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        String invokeDescriptor = INVOKER_TYPE.toMethodDescriptorString();
+        MethodVisitor invoke = writer.visitMethod(0, "invoke", invokeDescriptor, null, new String[]{"java/lang/Throwable"});
+        invoke.visitCode();
+        invoke.visitFieldInsn(Opcodes.GETSTATIC, name, "HANDLE", handleDescriptor);
+        invoke.visitVarInsn(Opcodes.ALOAD, 1);
+        invoke.visitVarInsn(Opcodes.ALOAD, 2);
+        invoke.visitVarInsn(Opcodes.ALOAD, 3);
+        invoke.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(MethodHandle.class), "invokeExact", invokeDescriptor, false);
+        invoke.visitInsn(Opcodes.RETURN);
+        invoke.visitMaxs(0, 0);
+        invoke.visitEnd();
+        writer.visitEnd();
+
+        PENDING.put(name, handle);
+        try {
+            Class<?> generated = defineClass(writer.toByteArray());
+            return (MethodInvoker) generated.getDeclaredConstructor().newInstance();
+        } finally {
+            PENDING.remove(name);
+        }
+    }
+
+    private static Class<?> defineClass(byte[] bytes) throws ReflectiveOperationException {
+        try {
+            // Java 9+
+            Method defineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+            return (Class<?>) defineClass.invoke(LOOKUP, (Object) bytes);
+        } catch (NoSuchMethodException e) {
+            Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+            defineClass.setAccessible(true);
+            return (Class<?>) defineClass.invoke(MethodInvoker.class.getClassLoader(), null, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * called once by the static initializer of each generated class
+     */
+    static MethodHandle takeHandle(String name) {
+        MethodHandle handle = PENDING.remove(name);
+        if (handle == null) {
+            throw new IllegalStateException("No handle for " + name);
+        }
+        return handle;
+    }
+
+    abstract void invoke(Object implement, Channel channel, Object object) throws Throwable;
+
+    /**
+     * keeps the handle in an instance field, used where no class can be generated
+     */
+    static final class Bound extends MethodInvoker {
+
+        private final MethodHandle handle;
+
+        Bound(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        void invoke(Object implement, Channel channel, Object object) throws Throwable {
+            handle.invokeExact(implement, channel, object);
+        }
+    }
+}
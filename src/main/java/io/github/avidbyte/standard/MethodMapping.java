@@ -3,24 +3,25 @@ package io.github.avidbyte.standard;
 import io.github.avidbyte.annotation.*;
 import io.github.avidbyte.exception.DeploymentException;
 import io.github.avidbyte.support.*;
-import io.netty.channel.Channel;
-import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
 import org.springframework.beans.factory.support.AbstractBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ReflectionUtils;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * @author Aaron
@@ -37,6 +38,8 @@ public class MethodMapping {
     private final Method onMessage;
     private final Method onBinary;
     private final Method onEvent;
+    private final Method onWritabilityChanged;
+    private final Method onRelease;
     private final MethodParameter[] beforeHandshakeParameters;
     private final MethodParameter[] onOpenParameters;
     private final MethodParameter[] onCloseParameters;
@@ -44,6 +47,7 @@ public class MethodMapping {
     private final MethodParameter[] onMessageParameters;
     private final MethodParameter[] onBinaryParameters;
     private final MethodParameter[] onEventParameters;
+    private final MethodParameter[] onWritabilityChangedParameters;
     private final MethodArgumentResolver[] beforeHandshakeArgResolvers;
     private final MethodArgumentResolver[] onOpenArgResolvers;
     private final MethodArgumentResolver[] onCloseArgResolvers;
@@ -51,9 +55,26 @@ public class MethodMapping {
     private final MethodArgumentResolver[] onMessageArgResolvers;
     private final MethodArgumentResolver[] onBinaryArgResolvers;
     private final MethodArgumentResolver[] onEventArgResolvers;
+    private final MethodArgumentResolver[] onWritabilityChangedArgResolvers;
+    private final MethodInvoker beforeHandshakeInvoker;
+    private final MethodInvoker onOpenInvoker;
+    private final MethodInvoker onCloseInvoker;
+    private final MethodInvoker onErrorInvoker;
+    private final MethodInvoker onMessageInvoker;
+    private final MethodInvoker onBinaryInvoker;
+    private final MethodInvoker onEventInvoker;
+    private final MethodInvoker onWritabilityChangedInvoker;
     private final Class<?> myClazz;
     private final ApplicationContext applicationContext;
     private final AbstractBeanFactory beanFactory;
+    private final EndpointScope scope;
+    private final Object singletonInstance;
+    private final Constructor<?> constructor;
+    private final AutowiredAnnotationBeanPostProcessor autowiredPostProcessor;
+    private final BlockingQueue<Object> instancePool;
+    private final SessionRegistry sessionRegistry = new SessionRegistry();
+    private final TopicRegistry topicRegistry = new TopicRegistry();
+    private final ReplayRegistry replayRegistry = new ReplayRegistry();
 
     public MethodMapping(Class<?> myClazz, ApplicationContext context, AbstractBeanFactory beanFactory) throws DeploymentException {
         this.applicationContext = context;
@@ -66,6 +87,8 @@ public class MethodMapping {
         Method message = null;
         Method binary = null;
         Method event = null;
+        Method writabilityChanged = null;
+        Method release = null;
         Method[] clazzMethods = null;
         Class<?> currentClazz = myClazz;
         while (!currentClazz.equals(Object.class)) {
@@ -158,6 +181,34 @@ public class MethodMapping {
                                     "MethodMapping.duplicateAnnotation OnEvent");
                         }
                     }
+                } else if (method.getAnnotation(OnWritabilityChanged.class) != null) {
+                    checkPublic(method);
+                    if (writabilityChanged == null) {
+                        writabilityChanged = method;
+                    } else {
+                        if (currentClazz == myClazz ||
+                                !isMethodOverride(writabilityChanged, method)) {
+                            // Duplicate annotation
+                            throw new DeploymentException(
+                                    "MethodMapping.duplicateAnnotation OnWritabilityChanged");
+                        }
+                    }
+                } else if (method.getAnnotation(OnRelease.class) != null) {
+                    checkPublic(method);
+                    if (method.getParameterCount() != 0) {
+                        throw new DeploymentException(
+                                "MethodMapping.onReleaseHasParameters " + method.getName());
+                    }
+                    if (release == null) {
+                        release = method;
+                    } else {
+                        if (currentClazz == myClazz ||
+                                !isMethodOverride(release, method)) {
+                            // Duplicate annotation
+                            throw new DeploymentException(
+                                    "MethodMapping.duplicateAnnotation OnRelease");
+                        }
+                    }
                 } else {
                     // Method not annotated
                 }
@@ -201,6 +252,16 @@ public class MethodMapping {
                 event = null;
             }
         }
+        if (writabilityChanged != null && writabilityChanged.getDeclaringClass() != myClazz) {
+            if (isOverrideWithoutAnnotation(clazzMethods, writabilityChanged, OnWritabilityChanged.class)) {
+                writabilityChanged = null;
+            }
+        }
+        if (release != null && release.getDeclaringClass() != myClazz) {
+            if (isOverrideWithoutAnnotation(clazzMethods, release, OnRelease.class)) {
+                release = null;
+            }
+        }
 
         this.beforeHandshake = handshake;
         this.onOpen = open;
@@ -209,6 +270,8 @@ public class MethodMapping {
         this.onMessage = message;
         this.onBinary = binary;
         this.onEvent = event;
+        this.onWritabilityChanged = writabilityChanged;
+        this.onRelease = release;
         beforeHandshakeParameters = getParameters(beforeHandshake);
         onOpenParameters = getParameters(onOpen);
         onCloseParameters = getParameters(onClose);
@@ -216,6 +279,7 @@ public class MethodMapping {
         onErrorParameters = getParameters(onError);
         onBinaryParameters = getParameters(onBinary);
         onEventParameters = getParameters(onEvent);
+        onWritabilityChangedParameters = getParameters(onWritabilityChanged);
         beforeHandshakeArgResolvers = getResolvers(beforeHandshakeParameters);
         onOpenArgResolvers = getResolvers(onOpenParameters);
         onCloseArgResolvers = getResolvers(onCloseParameters);
@@ -223,6 +287,33 @@ public class MethodMapping {
         onErrorArgResolvers = getResolvers(onErrorParameters);
         onBinaryArgResolvers = getResolvers(onBinaryParameters);
         onEventArgResolvers = getResolvers(onEventParameters);
+        onWritabilityChangedArgResolvers = getResolvers(onWritabilityChangedParameters);
+        beforeHandshakeInvoker = MethodInvoker.compile(beforeHandshake, beforeHandshakeParameters, beforeHandshakeArgResolvers);
+        onOpenInvoker = MethodInvoker.compile(onOpen, onOpenParameters, onOpenArgResolvers);
+        onCloseInvoker = MethodInvoker.compile(onClose, onCloseParameters, onCloseArgResolvers);
+        onErrorInvoker = MethodInvoker.compile(onError, onErrorParameters, onErrorArgResolvers);
+        onMessageInvoker = MethodInvoker.compile(onMessage, onMessageParameters, onMessageArgResolvers);
+        onBinaryInvoker = MethodInvoker.compile(onBinary, onBinaryParameters, onBinaryArgResolvers);
+        onEventInvoker = MethodInvoker.compile(onEvent, onEventParameters, onEventArgResolvers);
+        onWritabilityChangedInvoker = MethodInvoker.compile(onWritabilityChanged, onWritabilityChangedParameters, onWritabilityChangedArgResolvers);
+
+        // resolve everything an instance needs once, instead of on every handshake
+        ServerEndpoint serverEndpoint = AnnotatedElementUtils.findMergedAnnotation(myClazz, ServerEndpoint.class);
+        this.scope = serverEndpoint == null ? EndpointScope.PROTOTYPE : serverEndpoint.scope();
+        if (scope == EndpointScope.SINGLETON) {
+            this.singletonInstance = context.getBean(myClazz);
+            this.constructor = null;
+            this.autowiredPostProcessor = null;
+        } else {
+            this.singletonInstance = null;
+            try {
+                this.constructor = ReflectionUtils.accessibleConstructor(myClazz);
+            } catch (NoSuchMethodException e) {
+                throw new DeploymentException("MethodMapping.noDefaultConstructor " + myClazz.getName(), e);
+            }
+            this.autowiredPostProcessor = context.getBean(AutowiredAnnotationBeanPostProcessor.class);
+        }
+        this.instancePool = scope == EndpointScope.POOLED ? new ArrayBlockingQueue<>(Math.max(1, serverEndpoint.poolSize())) : null;
     }
 
     private void checkPublic(Method m) throws DeploymentException {
@@ -248,10 +339,54 @@ public class MethodMapping {
         return false;
     }
 
-    Object getEndpointInstance() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
-        Object implement = myClazz.getDeclaredConstructor().newInstance();
-        AutowiredAnnotationBeanPostProcessor postProcessor = applicationContext.getBean(AutowiredAnnotationBeanPostProcessor.class);
-        postProcessor.postProcessPropertyValues(null, null, implement, null);
+    Object getEndpointInstance() throws IllegalAccessException, InvocationTargetException, InstantiationException {
+        switch (scope) {
+            case SINGLETON:
+                return singletonInstance;
+            case POOLED:
+                Object pooled = instancePool.poll();
+                return pooled != null ? pooled : newEndpointInstance();
+            default:
+                return newEndpointInstance();
+        }
+    }
+
+    /**
+     * called once the connection which used the instance is closed. A pooled instance is reset by its
+     * {@link OnRelease} method first, and is not pooled again if that throws
+     *
+     * @param implement endpoint instance
+     */
+    void releaseEndpointInstance(Object implement) throws IllegalAccessException, InvocationTargetException {
+        if (instancePool != null && implement != null) {
+            if (onRelease != null) {
+                onRelease.invoke(implement);
+            }
+            instancePool.offer(implement);
+        }
+    }
+
+    /**
+     * @return open sessions of the endpoint
+     */
+    public SessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+
+    /**
+     * @return topics the sessions of the endpoint subscribe to
+     */
+    public TopicRegistry getTopicRegistry() {
+        return topicRegistry;
+    }
+
+    ReplayRegistry getReplayRegistry() {
+        return replayRegistry;
+    }
+
+    private Object newEndpointInstance() throws IllegalAccessException, InvocationTargetException, InstantiationException {
+        Object implement = constructor.newInstance();
+        autowiredPostProcessor.postProcessPropertyValues(null, null, implement, null);
         return implement;
     }
 
@@ -259,16 +394,16 @@ public class MethodMapping {
         return beforeHandshake;
     }
 
-    Object[] getBeforeHandshakeArgs(Channel channel, FullHttpRequest req) throws Exception {
-        return getMethodArgumentValues(channel, req, beforeHandshakeParameters, beforeHandshakeArgResolvers);
+    MethodInvoker getBeforeHandshakeInvoker() {
+        return beforeHandshakeInvoker;
     }
 
     Method getOnOpen() {
         return onOpen;
     }
 
-    Object[] getOnOpenArgs(Channel channel, FullHttpRequest req) throws Exception {
-        return getMethodArgumentValues(channel, req, onOpenParameters, onOpenArgResolvers);
+    MethodInvoker getOnOpenInvoker() {
+        return onOpenInvoker;
     }
 
     MethodArgumentResolver[] getOnOpenArgResolvers() {
@@ -279,51 +414,48 @@ public class MethodMapping {
         return onClose;
     }
 
-    Object[] getOnCloseArgs(Channel channel) throws Exception {
-        return getMethodArgumentValues(channel, null, onCloseParameters, onCloseArgResolvers);
+    MethodInvoker getOnCloseInvoker() {
+        return onCloseInvoker;
     }
 
     Method getOnError() {
         return onError;
     }
 
-    Object[] getOnErrorArgs(Channel channel, Throwable throwable) throws Exception {
-        return getMethodArgumentValues(channel, throwable, onErrorParameters, onErrorArgResolvers);
+    MethodInvoker getOnErrorInvoker() {
+        return onErrorInvoker;
     }
 
     Method getOnMessage() {
         return onMessage;
     }
 
-    Object[] getOnMessageArgs(Channel channel, TextWebSocketFrame textWebSocketFrame) throws Exception {
-        return getMethodArgumentValues(channel, textWebSocketFrame, onMessageParameters, onMessageArgResolvers);
+    MethodInvoker getOnMessageInvoker() {
+        return onMessageInvoker;
     }
 
     Method getOnBinary() {
         return onBinary;
     }
 
-    Object[] getOnBinaryArgs(Channel channel, BinaryWebSocketFrame binaryWebSocketFrame) throws Exception {
-        return getMethodArgumentValues(channel, binaryWebSocketFrame, onBinaryParameters, onBinaryArgResolvers);
+    MethodInvoker getOnBinaryInvoker() {
+        return onBinaryInvoker;
     }
 
     Method getOnEvent() {
         return onEvent;
     }
 
-    Object[] getOnEventArgs(Channel channel, Object evt) throws Exception {
-        return getMethodArgumentValues(channel, evt, onEventParameters, onEventArgResolvers);
+    MethodInvoker getOnEventInvoker() {
+        return onEventInvoker;
     }
 
-    private Object[] getMethodArgumentValues(Channel channel, Object object, MethodParameter[] parameters, MethodArgumentResolver[] resolvers) throws Exception {
-        Object[] objects = new Object[parameters.length];
-        for (int i = 0; i < parameters.length; i++) {
-            MethodParameter parameter = parameters[i];
-            MethodArgumentResolver resolver = resolvers[i];
-            Object arg = resolver.resolveArgument(parameter, channel, object);
-            objects[i] = arg;
-        }
-        return objects;
+    Method getOnWritabilityChanged() {
+        return onWritabilityChanged;
+    }
+
+    MethodInvoker getOnWritabilityChangedInvoker() {
+        return onWritabilityChangedInvoker;
     }
 
     private MethodArgumentResolver[] getResolvers(MethodParameter[] parameters) throws DeploymentException {
@@ -347,10 +479,15 @@ public class MethodMapping {
     private List<MethodArgumentResolver> getDefaultResolvers() {
         List<MethodArgumentResolver> resolvers = new ArrayList<>();
         resolvers.add(new SessionMethodArgumentResolver());
+        resolvers.add(new SessionRegistryMethodArgumentResolver(sessionRegistry));
+        resolvers.add(new TopicRegistryMethodArgumentResolver(topicRegistry));
         resolvers.add(new HttpHeadersMethodArgumentResolver());
         resolvers.add(new TextMethodArgumentResolver());
         resolvers.add(new ThrowableMethodArgumentResolver());
         resolvers.add(new ByteMethodArgumentResolver());
+        resolvers.add(new PayloadMethodArgumentResolver());
+        resolvers.add(new FrameMethodArgumentResolver());
+        resolvers.add(new WritabilityMethodArgumentResolver());
         resolvers.add(new PathParamMethodArgumentResolver(beanFactory));
         resolvers.add(new EventMethodArgumentResolver(beanFactory));
         return resolvers;
@@ -0,0 +1,115 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.Channel;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the callbacks of one session one at a time and in submission order on a shared {@link Executor}.
+ * <p>
+ * At most one drain task of a session is submitted to the backing executor at any time, so the session is not
+ * pinned to a thread and a blocked session only holds the thread it is running on.
+ * <p>
+ * With a capacity, the channel of the session stops reading once that many callbacks are queued and starts again when
+ * the queue has drained to half of it, so a client sending faster than the endpoint handles is held back by TCP
+ * instead of growing the heap. Frames already read from the socket are still queued, the bound is not exact.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class OrderedSessionExecutor implements Executor {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(OrderedSessionExecutor.class);
+
+    private final Executor executor;
+    private final Channel channel;
+    private final int capacity;
+    private final int resumeThreshold;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean suspended = new AtomicBoolean();
+
+    OrderedSessionExecutor(Executor executor) {
+        this(executor, null, 0);
+    }
+
+    /**
+     * @param executor executor the tasks are run on
+     * @param channel  channel of the session
+     * @param capacity queued tasks at which the channel stops reading, 0 means unbounded
+     */
+    OrderedSessionExecutor(Executor executor, Channel channel, int capacity) {
+        this.executor = executor;
+        this.channel = channel;
+        this.capacity = channel == null ? 0 : capacity;
+        this.resumeThreshold = capacity / 2;
+    }
+
+    /**
+     * work-stealing pool for the work-stealing execution mode, tasks submitted from outside the pool are taken in FIFO order
+     *
+     * @param threads    parallelism
+     * @param threadName prefix of the thread names
+     * @return ForkJoinPool
+     */
+    static ForkJoinPool newWorkStealingPool(int threads, String threadName) {
+        AtomicInteger index = new AtomicInteger();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(threadName + "-" + index.incrementAndGet());
+            return thread;
+        }, null, true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (capacity > 0 && pending.incrementAndGet() >= capacity && suspended.compareAndSet(false, true)) {
+            ReadThrottle.update(channel, ReadThrottle.Source.TASK_QUEUE, suspended);
+            // the queue may have drained before the flag was set
+            resumeIfDrained();
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOGGER.error(t);
+            }
+            if (capacity > 0) {
+                pending.decrementAndGet();
+                resumeIfDrained();
+            }
+        }
+        scheduled.set(false);
+        // a task may have been queued after the last poll but before the flag was cleared
+        if (!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void resumeIfDrained() {
+        if (pending.get() <= resumeThreshold && suspended.compareAndSet(true, false)) {
+            ReadThrottle.update(channel, ReadThrottle.Source.TASK_QUEUE, suspended);
+        }
+    }
+}
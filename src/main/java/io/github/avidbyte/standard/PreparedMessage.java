@@ -0,0 +1,289 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCounted;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * A message encoded once, WebSocket frame header included, to be sent to any number of sessions with
+ * {@link Session#sendPrepared(PreparedMessage)} or {@link SessionRegistry#broadcast(PreparedMessage, java.util.function.Predicate)}.
+ * <p>
+ * Server frames are never masked, so the frame bytes are the same for every connection and are written to the socket
+ * as they are, past the frame encoder. With {@code deflate} the payload is compressed as well, once, when the first
+ * session that can take it is written to: sessions that negotiated permessage-deflate with
+ * {@code server_no_context_takeover} and the default window all get the same compressed frame. Sessions that
+ * negotiated compression with context takeover get a frame over the shared payload for their own compressor, every
+ * other session, and every session for a message below its {@code compression-min-payload-size}, gets the
+ * uncompressed frame.
+ * <p>
+ * Release the message once it has been handed to every session, each send holds its own reference to the bytes.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public final class PreparedMessage extends AbstractReferenceCounted {
+
+    /**
+     * set on channels whose permessage-deflate context can take a message compressed on its own
+     */
+    static final AttributeKey<Boolean> DEFLATE_WITHOUT_CONTEXT_KEY = AttributeKey.valueOf("WEBSOCKET_DEFLATE_WITHOUT_CONTEXT");
+
+    /**
+     * set on channels that negotiated a compression extension
+     */
+    static final AttributeKey<Boolean> DEFLATE_KEY = AttributeKey.valueOf("WEBSOCKET_DEFLATE");
+
+    /**
+     * set on compressing channels that send smaller messages uncompressed
+     */
+    static final AttributeKey<Integer> DEFLATE_MIN_SIZE_KEY = AttributeKey.valueOf("WEBSOCKET_DEFLATE_MIN_SIZE");
+
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    private static final int FIN = 0x80;
+    private static final int RSV1 = 0x40;
+
+    /**
+     * every deflate block flushed with Z_SYNC_FLUSH ends with these bytes, permessage-deflate drops them
+     */
+    private static final byte[] SYNC_FLUSH_TAIL = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+    private final int opcode;
+    private final ByteBuf frame;
+    private final int headerLength;
+    private final boolean deflate;
+    private final int level;
+
+    /**
+     * kept until the payload is compressed
+     */
+    private byte[] payload;
+    private volatile ByteBuf deflatedFrame;
+
+    private PreparedMessage(int opcode, byte[] payload, boolean deflate, int level) {
+        this.opcode = opcode;
+        this.frame = encodeFrame(FIN | opcode, payload);
+        this.headerLength = frame.readableBytes() - payload.length;
+        this.deflate = deflate;
+        this.level = level;
+        this.payload = deflate ? payload : null;
+    }
+
+    public static PreparedMessage text(CharSequence text) {
+        return text(text, false);
+    }
+
+    /**
+     * @param text    text
+     * @param deflate compress it for the sessions that negotiated compression, at the default level
+     * @return PreparedMessage
+     * @see #text(CharSequence, boolean, int)
+     */
+    public static PreparedMessage text(CharSequence text, boolean deflate) {
+        return text(text, deflate, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param text    text
+     * @param deflate compress it for the sessions that negotiated compression
+     * @param level   level to compress at, the endpoint's is {@link SessionRegistry#getCompressionLevel()}
+     * @return PreparedMessage
+     */
+    public static PreparedMessage text(CharSequence text, boolean deflate, int level) {
+        return prepare(OPCODE_TEXT, text.toString().getBytes(StandardCharsets.UTF_8), deflate, level);
+    }
+
+    public static PreparedMessage binary(byte[] bytes) {
+        return binary(bytes, false);
+    }
+
+    /**
+     * @param bytes   bytes
+     * @param deflate compress them for the sessions that negotiated compression, at the default level
+     * @return PreparedMessage
+     * @see #binary(byte[], boolean, int)
+     */
+    public static PreparedMessage binary(byte[] bytes, boolean deflate) {
+        return binary(bytes, deflate, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param bytes   bytes
+     * @param deflate compress them for the sessions that negotiated compression
+     * @param level   level to compress at, the endpoint's is {@link SessionRegistry#getCompressionLevel()}
+     * @return PreparedMessage
+     */
+    public static PreparedMessage binary(byte[] bytes, boolean deflate, int level) {
+        return prepare(OPCODE_BINARY, bytes, deflate, level);
+    }
+
+    /**
+     * @param payload payload, not released
+     * @param deflate compress it for the sessions that negotiated compression, at the default level
+     * @return PreparedMessage
+     * @see #binary(ByteBuf, boolean, int)
+     */
+    public static PreparedMessage binary(ByteBuf payload, boolean deflate) {
+        return binary(payload, deflate, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param payload payload, not released
+     * @param deflate compress it for the sessions that negotiated compression
+     * @param level   level to compress at, the endpoint's is {@link SessionRegistry#getCompressionLevel()}
+     * @return PreparedMessage
+     */
+    public static PreparedMessage binary(ByteBuf payload, boolean deflate, int level) {
+        return prepare(OPCODE_BINARY, ByteBufUtil.getBytes(payload), deflate, level);
+    }
+
+    static PreparedMessage prepare(int opcode, byte[] payload, boolean deflate, int level) {
+        return new PreparedMessage(opcode, payload, deflate, level);
+    }
+
+    /**
+     * @return whether the payload has been compressed, which happens on the first send to a session that can take it
+     */
+    public boolean hasDeflated() {
+        return deflatedFrame != null;
+    }
+
+    /**
+     * @return bytes of the uncompressed frame, header included
+     */
+    public int frameLength() {
+        return frame.readableBytes();
+    }
+
+    /**
+     * @return bytes of the compressed frame, header included, compressing the payload if it was not yet,
+     * {@code -1} without {@code deflate}
+     */
+    public int deflatedFrameLength() {
+        return deflate ? deflatedFrame().readableBytes() : -1;
+    }
+
+    /**
+     * the message to write to the channel, in the form the channel can take
+     *
+     * @param channel channel
+     * @return retained duplicate of the frame bytes, or a frame over the payload for the channel's own compressor
+     */
+    Object retainedMessage(Channel channel) {
+        if (channel.hasAttr(ReplayHandler.RECORDING_KEY)) {
+            // the replay buffer keeps the plain payload of frames
+            ByteBuf content = frame.retainedSlice(headerLength, frame.readableBytes() - headerLength);
+            return opcode == OPCODE_TEXT ? new TextWebSocketFrame(content) : new BinaryWebSocketFrame(content);
+        }
+        if (deflate) {
+            Integer minSize = channel.attr(DEFLATE_MIN_SIZE_KEY).get();
+            if (minSize != null && frame.readableBytes() - headerLength < minSize) {
+                return frame.retainedDuplicate();
+            }
+            if (Boolean.TRUE.equals(channel.attr(DEFLATE_WITHOUT_CONTEXT_KEY).get())) {
+                return deflatedFrame().retainedDuplicate();
+            }
+            if (Boolean.TRUE.equals(channel.attr(DEFLATE_KEY).get())) {
+                ByteBuf content = frame.retainedSlice(headerLength, frame.readableBytes() - headerLength);
+                return opcode == OPCODE_TEXT ? new TextWebSocketFrame(content) : new BinaryWebSocketFrame(content);
+            }
+        }
+        return frame.retainedDuplicate();
+    }
+
+    /**
+     * @return the uncompressed frame, not retained
+     */
+    ByteBuf plainFrame() {
+        return frame;
+    }
+
+    private ByteBuf deflatedFrame() {
+        ByteBuf deflated = deflatedFrame;
+        if (deflated == null) {
+            synchronized (this) {
+                deflated = deflatedFrame;
+                if (deflated == null) {
+                    deflated = encodeFrame(FIN | RSV1 | opcode, deflate(payload, level));
+                    deflatedFrame = deflated;
+                    payload = null;
+                }
+            }
+        }
+        return deflated;
+    }
+
+    @Override
+    protected void deallocate() {
+        frame.release();
+        ByteBuf deflated = deflatedFrame;
+        if (deflated != null) {
+            deflated.release();
+        }
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        frame.touch(hint);
+        return this;
+    }
+
+    private static ByteBuf encodeFrame(int firstByte, byte[] payload) {
+        int length = payload.length;
+        int headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        ByteBuf buf = ByteBufAllocator.DEFAULT.directBuffer(headerLength + length);
+        buf.writeByte(firstByte);
+        if (length < 126) {
+            buf.writeByte(length);
+        } else if (length <= 0xFFFF) {
+            buf.writeByte(126);
+            buf.writeShort(length);
+        } else {
+            buf.writeByte(127);
+            buf.writeLong(length);
+        }
+        buf.writeBytes(payload);
+        return buf;
+    }
+
+    private static byte[] deflate(byte[] payload, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(payload);
+            byte[] out = new byte[Math.max(64, payload.length / 2)];
+            int length = 0;
+            while (true) {
+                length += deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+                if (length < out.length) {
+                    break;
+                }
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            if (length >= SYNC_FLUSH_TAIL.length && endsWithSyncFlushTail(out, length)) {
+                length -= SYNC_FLUSH_TAIL.length;
+            }
+            return length == out.length ? out : Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean endsWithSyncFlushTail(byte[] out, int length) {
+        for (int i = 0; i < SYNC_FLUSH_TAIL.length; i++) {
+            if (out[length - SYNC_FLUSH_TAIL.length + i] != SYNC_FLUSH_TAIL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
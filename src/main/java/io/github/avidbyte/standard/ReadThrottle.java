@@ -0,0 +1,79 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Turns {@code autoRead} of a channel off while at least one source of backpressure asks for it.
+ * <p>
+ * Every source keeps whether it wants reading to stop in its own flag and calls {@link #update(Channel, Source, AtomicBoolean)}
+ * after each change of it. The update may be called from any thread and runs on the event loop of the channel, where
+ * it reads the flag again. Updates posted from different threads may run in any order, the last of them sees the
+ * latest value, so a source is never left suspended or resumed by a stale update, and never affects another source.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class ReadThrottle {
+
+    private static final AttributeKey<ReadThrottle> THROTTLE_KEY = AttributeKey.valueOf("WEBSOCKET_READ_THROTTLE");
+
+    /**
+     * sources of backpressure, each suspends reading independently of the others
+     */
+    enum Source {
+        /**
+         * the inbound memory budget of the endpoint
+         */
+        MEMORY_BUDGET,
+
+        /**
+         * the task queue of the session
+         */
+        TASK_QUEUE
+    }
+
+    /**
+     * one bit per source that wants reading to stop
+     */
+    private int suspendedSources;
+
+    private ReadThrottle() {
+    }
+
+    /**
+     * @param channel   channel
+     * @param source    source whose flag changed
+     * @param suspended flag of the source, whether it wants reading to stop, read on the event loop
+     */
+    static void update(Channel channel, Source source, AtomicBoolean suspended) {
+        if (channel.eventLoop().inEventLoop()) {
+            of(channel).doUpdate(channel, source, suspended.get());
+        } else {
+            channel.eventLoop().execute(() -> of(channel).doUpdate(channel, source, suspended.get()));
+        }
+    }
+
+    private static ReadThrottle of(Channel channel) {
+        ReadThrottle throttle = channel.attr(THROTTLE_KEY).get();
+        if (throttle == null) {
+            throttle = new ReadThrottle();
+            channel.attr(THROTTLE_KEY).set(throttle);
+        }
+        return throttle;
+    }
+
+    private void doUpdate(Channel channel, Source source, boolean suspended) {
+        int before = suspendedSources;
+        int bit = 1 << source.ordinal();
+        suspendedSources = suspended ? before | bit : before & ~bit;
+        if (before == 0 && suspendedSources != 0) {
+            channel.config().setAutoRead(false);
+        } else if (before != 0 && suspendedSources == 0) {
+            // switching autoRead back on also requests the next read
+            channel.config().setAutoRead(true);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last messages sent to a resumable session, numbered from 1 and copied into pooled direct buffers, at most
+ * {@code maxMessages} messages and {@code maxBytes} bytes, the oldest dropped first. It outlives its connection for
+ * the grace period, during which a new connection may take it over and get the messages the client missed.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class ReplayBuffer {
+
+    private final ReplayRegistry registry;
+    private final String token;
+    private final int maxMessages;
+    private final int maxBytes;
+    private final long graceMillis;
+
+    /**
+     * guarded by this
+     */
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long bytes;
+    private long nextSeq = 1;
+    private Channel owner;
+    private ScheduledFuture<?> expiry;
+    private boolean released;
+
+    ReplayBuffer(ReplayRegistry registry, String token, Channel owner, int maxMessages, int maxBytes, long graceMillis) {
+        this.registry = registry;
+        this.token = token;
+        this.owner = owner;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.graceMillis = graceMillis;
+    }
+
+    String token() {
+        return token;
+    }
+
+    int maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return number of the last message sent, 0 before the first
+     */
+    synchronized long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * copy a message sent over the channel, ignored unless the channel owns the buffer
+     *
+     * @param content payload, {@code null} for a message too large to keep
+     */
+    synchronized void record(Channel channel, int opcode, ByteBuf content) {
+        if (channel != owner || released) {
+            return;
+        }
+        long seq = nextSeq++;
+        if (content == null || content.readableBytes() > maxBytes) {
+            // a client that missed it cannot resume
+            clear();
+            return;
+        }
+        int length = content.readableBytes();
+        ByteBuf copy = channel.alloc().directBuffer(length);
+        copy.writeBytes(content, content.readerIndex(), length);
+        entries.addLast(new Entry(seq, opcode, copy));
+        bytes += length;
+        while (entries.size() > maxMessages || bytes > maxBytes) {
+            drop(entries.removeFirst());
+        }
+    }
+
+    /**
+     * the connection closed, the messages are kept for the grace period
+     */
+    synchronized void detach(Channel channel) {
+        if (channel != owner || released) {
+            return;
+        }
+        owner = null;
+        try {
+            expiry = channel.eventLoop().schedule(this::expire, graceMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the event loop is shutting down, nobody resumes
+            release();
+        }
+    }
+
+    /**
+     * move the buffer to a new connection, closing the one it was on
+     *
+     * @param channel new connection
+     * @param lastSeq number of the last message the client received
+     * @return the messages after {@code lastSeq}, retained, {@code null} if the buffer is gone or no longer holds all
+     * of them
+     */
+    synchronized List<WebSocketFrame> takeOver(Channel channel, long lastSeq) {
+        long firstSeq = entries.isEmpty() ? nextSeq : entries.peekFirst().seq;
+        if (released || lastSeq < firstSeq - 1 || lastSeq >= nextSeq) {
+            return null;
+        }
+        if (expiry != null) {
+            expiry.cancel(false);
+            expiry = null;
+        }
+        Channel previous = owner;
+        owner = channel;
+        if (previous != null) {
+            // a reconnect often comes before the server noticed the old connection is gone
+            previous.close();
+        }
+        // the client has the older ones
+        while (!entries.isEmpty() && entries.peekFirst().seq <= lastSeq) {
+            drop(entries.removeFirst());
+        }
+        List<WebSocketFrame> missed = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            ByteBuf content = entry.content.retainedDuplicate();
+            missed.add(entry.opcode == PreparedMessage.OPCODE_TEXT ? new TextWebSocketFrame(content) : new BinaryWebSocketFrame(content));
+        }
+        return missed;
+    }
+
+    void release() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+            clear();
+            if (expiry != null) {
+                expiry.cancel(false);
+                expiry = null;
+            }
+        }
+        registry.remove(token, this);
+    }
+
+    private void expire() {
+        synchronized (this) {
+            if (owner != null) {
+                // resumed meanwhile
+                return;
+            }
+        }
+        release();
+    }
+
+    private void clear() {
+        while (!entries.isEmpty()) {
+            drop(entries.removeFirst());
+        }
+    }
+
+    private void drop(Entry entry) {
+        bytes -= entry.content.readableBytes();
+        entry.content.release();
+    }
+
+    private static final class Entry {
+        private final long seq;
+        private final int opcode;
+        private final ByteBuf content;
+
+        private Entry(long seq, int opcode, ByteBuf content) {
+            this.seq = seq;
+            this.opcode = opcode;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Records the text and binary messages written through the channel in the {@link ReplayBuffer} of the session, a
+ * fragmented message once it is complete, and writes the missed messages of a resumed session. Installed right before
+ * the {@link SlowConsumerHandler}, so messages that policy drops are not recorded, and before compression, so the
+ * plain payload is kept.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class ReplayHandler extends ChannelDuplexHandler {
+
+    /**
+     * set on channels whose messages are recorded, {@link PreparedMessage} then writes frames instead of encoded bytes
+     */
+    static final AttributeKey<Boolean> RECORDING_KEY = AttributeKey.valueOf("WEBSOCKET_REPLAY_RECORDING");
+
+    private final ReplayRegistry registry;
+    private volatile ReplayBuffer buffer;
+    private volatile ChannelHandlerContext ctx;
+
+    /**
+     * the fragments of the message being written, only touched on the event loop
+     */
+    private ByteBuf fragments;
+    private int fragmentsOpcode;
+    private boolean fragmentsTooLarge;
+
+    ReplayHandler(ReplayRegistry registry, ReplayBuffer buffer) {
+        this.registry = registry;
+        this.buffer = buffer;
+    }
+
+    String token() {
+        return buffer.token();
+    }
+
+    long lastSeq() {
+        return buffer.lastSeq();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        ctx.channel().attr(RECORDING_KEY).set(Boolean.TRUE);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame || msg instanceof ContinuationWebSocketFrame) {
+            record(ctx.channel(), (WebSocketFrame) msg);
+        }
+        ctx.write(msg, promise);
+    }
+
+    private void record(Channel channel, WebSocketFrame frame) {
+        ReplayBuffer buffer = this.buffer;
+        if (frame instanceof ContinuationWebSocketFrame) {
+            if (fragments == null && !fragmentsTooLarge) {
+                // the message began before this handler was added
+                return;
+            }
+            ByteBuf content = frame.content();
+            if (!fragmentsTooLarge && fragments.readableBytes() + content.readableBytes() > buffer.maxBytes()) {
+                fragments.release();
+                fragments = null;
+                fragmentsTooLarge = true;
+            }
+            if (!fragmentsTooLarge) {
+                fragments.writeBytes(content, content.readerIndex(), content.readableBytes());
+            }
+            if (frame.isFinalFragment()) {
+                buffer.record(channel, fragmentsOpcode, fragments);
+                releaseFragments();
+            }
+            return;
+        }
+        int opcode = frame instanceof TextWebSocketFrame ? PreparedMessage.OPCODE_TEXT : PreparedMessage.OPCODE_BINARY;
+        if (frame.isFinalFragment()) {
+            buffer.record(channel, opcode, frame.content());
+            return;
+        }
+        releaseFragments();
+        ByteBuf content = frame.content();
+        fragments = channel.alloc().directBuffer(content.readableBytes() * 2);
+        fragments.writeBytes(content, content.readerIndex(), content.readableBytes());
+        fragmentsOpcode = opcode;
+    }
+
+    private void releaseFragments() {
+        if (fragments != null) {
+            fragments.release();
+            fragments = null;
+        }
+        fragmentsTooLarge = false;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releaseFragments();
+        buffer.detach(ctx.channel());
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * take the buffer of a closed or closing session over and write the messages it sent after {@code lastSeq}
+     *
+     * @return {@code false} if the token is unknown or expired, or if the buffer no longer holds every message after
+     * {@code lastSeq}
+     */
+    boolean resume(String token, long lastSeq) {
+        ReplayBuffer current = buffer;
+        ReplayBuffer resumed = registry.get(token);
+        if (resumed == null || resumed == current) {
+            return false;
+        }
+        Channel channel = ctx.channel();
+        List<WebSocketFrame> missed = resumed.takeOver(channel, lastSeq);
+        if (missed == null) {
+            return false;
+        }
+        buffer = resumed;
+        current.release();
+        if (!channel.isActive()) {
+            // closed while resuming, channelInactive may have seen the previous buffer
+            resumed.detach(channel);
+        }
+        Runnable replay = () -> {
+            // from this context, so the messages are not recorded again
+            for (WebSocketFrame frame : missed) {
+                ctx.write(frame, ctx.voidPromise());
+            }
+            ctx.flush();
+        };
+        if (channel.eventLoop().inEventLoop()) {
+            replay.run();
+        } else {
+            try {
+                channel.eventLoop().execute(replay);
+            } catch (RejectedExecutionException e) {
+                missed.forEach(ReferenceCountUtil::release);
+            }
+        }
+        return true;
+    }
+}
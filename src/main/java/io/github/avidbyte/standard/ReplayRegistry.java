@@ -0,0 +1,49 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.Channel;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link ReplayBuffer}s of one endpoint by resume token, those of open sessions and those waiting out their grace
+ * period after the connection closed.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class ReplayRegistry {
+
+    private final Map<String, ReplayBuffer> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * @param channel     connection the messages are sent over
+     * @param maxMessages messages kept
+     * @param maxBytes    bytes kept
+     * @param graceMillis how long the messages are kept after the connection closed
+     * @return a buffer under a new token
+     */
+    ReplayBuffer open(Channel channel, int maxMessages, int maxBytes, long graceMillis) {
+        // random UUIDs come from a SecureRandom, the token cannot be guessed
+        String token = UUID.randomUUID().toString();
+        ReplayBuffer buffer = new ReplayBuffer(this, token, channel, maxMessages, maxBytes, graceMillis);
+        buffers.put(token, buffer);
+        return buffer;
+    }
+
+    ReplayBuffer get(String token) {
+        return buffers.get(token);
+    }
+
+    void remove(String token, ReplayBuffer buffer) {
+        buffers.remove(token, buffer);
+    }
+
+    /**
+     * @return number of buffers, of open and of recently closed sessions
+     */
+    int size() {
+        return buffers.size();
+    }
+}
@@ -18,9 +18,17 @@ public class ServerEndpointConfig {
 
     private final String HOST;
     private final int PORT;
+    private final String TRANSPORT;
     private final int BOSS_LOOP_GROUP_THREADS;
+    private final int REUSE_PORT_LISTENERS;
     private final int WORKER_LOOP_GROUP_THREADS;
     private final boolean USE_COMPRESSION_HANDLER;
+    private final boolean COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER;
+    private final boolean COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER;
+    private final int COMPRESSION_LEVEL;
+    private final int COMPRESSION_SERVER_MAX_WINDOW_BITS;
+    private final int COMPRESSION_CLIENT_MAX_WINDOW_BITS;
+    private final int COMPRESSION_MIN_PAYLOAD_SIZE;
     private final int CONNECT_TIMEOUT_MILLIS;
     private final int SO_BACKLOG;
     private final int WRITE_SPIN_COUNT;
@@ -32,12 +40,25 @@ public class ServerEndpointConfig {
     private final boolean SO_KEEPALIVE;
     private final int SO_LINGER;
     private final boolean ALLOW_HALF_CLOSURE;
+    private final int FLUSH_CONSOLIDATION_AFTER_FLUSHES;
+    private final SlowConsumerPolicy SLOW_CONSUMER_POLICY;
+    private final int SLOW_CONSUMER_QUEUE_CAPACITY;
+    private final long SLOW_CONSUMER_TIMEOUT_MILLIS;
+    private final int REPLAY_BUFFER_MESSAGES;
+    private final int REPLAY_BUFFER_BYTES;
+    private final long REPLAY_GRACE_MILLIS;
+    private final String JOURNAL_DIRECTORY;
+    private final int JOURNAL_SEGMENT_BYTES;
+    private final int JOURNAL_SEGMENTS;
     private final int READER_IDLE_TIME_SECONDS;
     private final int WRITER_IDLE_TIME_SECONDS;
     private final int ALL_IDLE_TIME_SECONDS;
     private final int MAX_FRAME_PAYLOAD_LENGTH;
-    private final boolean USE_EVENT_EXECUTOR_GROUP;
+    private final int MAX_MESSAGE_SIZE;
+    private final boolean STREAM_FRAGMENTS;
+    private final ExecutionMode EXECUTION_MODE;
     private final int EVENT_EXECUTOR_GROUP_THREADS;
+    private final int SESSION_QUEUE_CAPACITY;
 
     private final String KEY_PASSWORD;
     private final String KEY_STORE;
@@ -62,9 +83,17 @@ public class ServerEndpointConfig {
             this.HOST = host;
         }
         this.PORT = getAvailablePort(nettyProperties.getPort());
+        this.TRANSPORT = nettyProperties.getTransport();
         this.BOSS_LOOP_GROUP_THREADS = nettyProperties.getBossLoopGroupThreads();
+        this.REUSE_PORT_LISTENERS = Math.max(1, nettyProperties.getReusePortListeners());
         this.WORKER_LOOP_GROUP_THREADS = nettyProperties.getWorkerLoopGroupThreads();
         this.USE_COMPRESSION_HANDLER = nettyProperties.isUseCompressionHandler();
+        this.COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER = nettyProperties.isCompressionServerNoContextTakeover();
+        this.COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER = nettyProperties.isCompressionClientNoContextTakeover();
+        this.COMPRESSION_LEVEL = checkRange("compression-level", nettyProperties.getCompressionLevel(), 1, 9);
+        this.COMPRESSION_SERVER_MAX_WINDOW_BITS = checkRange("compression-server-max-window-bits", nettyProperties.getCompressionServerMaxWindowBits(), 8, 15);
+        this.COMPRESSION_CLIENT_MAX_WINDOW_BITS = checkRange("compression-client-max-window-bits", nettyProperties.getCompressionClientMaxWindowBits(), 8, 15);
+        this.COMPRESSION_MIN_PAYLOAD_SIZE = Math.max(0, nettyProperties.getCompressionMinPayloadSize());
         this.CONNECT_TIMEOUT_MILLIS = nettyProperties.getOptionConnectTimeoutMillis();
         this.SO_BACKLOG = nettyProperties.getOptionSoBacklog();
         this.WRITE_SPIN_COUNT = nettyProperties.getChildOptionWriteSpinCount();
@@ -76,12 +105,31 @@ public class ServerEndpointConfig {
         this.SO_KEEPALIVE = nettyProperties.isChildOptionSoKeepalive();
         this.SO_LINGER = nettyProperties.getChildOptionSoLinger();
         this.ALLOW_HALF_CLOSURE = nettyProperties.isChildOptionAllowHalfClosure();
+        this.FLUSH_CONSOLIDATION_AFTER_FLUSHES = Math.max(0, nettyProperties.getFlushConsolidationAfterFlushes());
+        this.SLOW_CONSUMER_POLICY = SlowConsumerPolicy.parse(nettyProperties.getSlowConsumerPolicy());
+        this.SLOW_CONSUMER_QUEUE_CAPACITY = checkRange("slow-consumer-queue-capacity", nettyProperties.getSlowConsumerQueueCapacity(), 1, Integer.MAX_VALUE);
+        if (nettyProperties.getSlowConsumerTimeoutMillis() <= 0) {
+            throw new IllegalArgumentException("slow-consumer-timeout-millis must be positive, was " + nettyProperties.getSlowConsumerTimeoutMillis());
+        }
+        this.SLOW_CONSUMER_TIMEOUT_MILLIS = nettyProperties.getSlowConsumerTimeoutMillis();
+        this.REPLAY_BUFFER_MESSAGES = checkRange("replay-buffer-messages", nettyProperties.getReplayBufferMessages(), 0, Integer.MAX_VALUE);
+        this.REPLAY_BUFFER_BYTES = checkRange("replay-buffer-bytes", nettyProperties.getReplayBufferBytes(), 1, Integer.MAX_VALUE);
+        if (nettyProperties.getReplayGraceMillis() <= 0) {
+            throw new IllegalArgumentException("replay-grace-millis must be positive, was " + nettyProperties.getReplayGraceMillis());
+        }
+        this.REPLAY_GRACE_MILLIS = nettyProperties.getReplayGraceMillis();
+        this.JOURNAL_DIRECTORY = nettyProperties.getJournalDirectory() == null ? "" : nettyProperties.getJournalDirectory().trim();
+        this.JOURNAL_SEGMENT_BYTES = checkRange("journal-segment-bytes", nettyProperties.getJournalSegmentBytes(), 1024, Integer.MAX_VALUE);
+        this.JOURNAL_SEGMENTS = checkRange("journal-segments", nettyProperties.getJournalSegments(), 1, Integer.MAX_VALUE);
         this.READER_IDLE_TIME_SECONDS = nettyProperties.getReaderIdleTimeSeconds();
         this.WRITER_IDLE_TIME_SECONDS = nettyProperties.getWriterIdleTimeSeconds();
         this.ALL_IDLE_TIME_SECONDS = nettyProperties.getAllIdleTimeSeconds();
         this.MAX_FRAME_PAYLOAD_LENGTH = nettyProperties.getMaxFramePayloadLength();
-        this.USE_EVENT_EXECUTOR_GROUP = nettyProperties.isUseEventExecutorGroup();
+        this.MAX_MESSAGE_SIZE = nettyProperties.getMaxMessageSize();
+        this.STREAM_FRAGMENTS = nettyProperties.isStreamFragments();
+        this.EXECUTION_MODE = ExecutionMode.parse(nettyProperties.getExecutionMode(), nettyProperties.isUseEventExecutorGroup());
         this.EVENT_EXECUTOR_GROUP_THREADS = nettyProperties.getEventExecutorGroupThreads();
+        this.SESSION_QUEUE_CAPACITY = Math.max(0, nettyProperties.getSessionQueueCapacity());
 
         this.KEY_PASSWORD = nettyProperties.getSslKeyPassword();
         this.KEY_STORE = nettyProperties.getSslKeyStore();
@@ -96,6 +144,13 @@ public class ServerEndpointConfig {
     }
 
 
+    private static int checkRange(String name, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max + ", was " + value);
+        }
+        return value;
+    }
+
     private int getAvailablePort(int port) {
         if (port != 0) {
             return port;
@@ -128,10 +183,18 @@ public class ServerEndpointConfig {
         return PORT;
     }
 
+    public String getTransport() {
+        return TRANSPORT;
+    }
+
     public int getBossLoopGroupThreads() {
         return BOSS_LOOP_GROUP_THREADS;
     }
 
+    public int getReusePortListeners() {
+        return REUSE_PORT_LISTENERS;
+    }
+
     public int getWorkerLoopGroupThreads() {
         return WORKER_LOOP_GROUP_THREADS;
     }
@@ -140,6 +203,37 @@ public class ServerEndpointConfig {
         return USE_COMPRESSION_HANDLER;
     }
 
+    public boolean isCompressionServerNoContextTakeover() {
+        return COMPRESSION_SERVER_NO_CONTEXT_TAKEOVER;
+    }
+
+    public boolean isCompressionClientNoContextTakeover() {
+        return COMPRESSION_CLIENT_NO_CONTEXT_TAKEOVER;
+    }
+
+    public int getCompressionLevel() {
+        return COMPRESSION_LEVEL;
+    }
+
+    public int getCompressionServerMaxWindowBits() {
+        return COMPRESSION_SERVER_MAX_WINDOW_BITS;
+    }
+
+    public int getCompressionClientMaxWindowBits() {
+        return COMPRESSION_CLIENT_MAX_WINDOW_BITS;
+    }
+
+    public int getCompressionMinPayloadSize() {
+        return COMPRESSION_MIN_PAYLOAD_SIZE;
+    }
+
+    /**
+     * @return bytes of compression state a connection keeps between messages at most, 0 without compression
+     */
+    public long getCompressionMemoryPerConnection() {
+        return USE_COMPRESSION_HANDLER ? WebSocketCompressionHandler.memoryPerConnection(this) : 0;
+    }
+
     public int getConnectTimeoutMillis() {
         return CONNECT_TIMEOUT_MILLIS;
     }
@@ -184,6 +278,46 @@ public class ServerEndpointConfig {
         return ALLOW_HALF_CLOSURE;
     }
 
+    public int getFlushConsolidationAfterFlushes() {
+        return FLUSH_CONSOLIDATION_AFTER_FLUSHES;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return SLOW_CONSUMER_POLICY;
+    }
+
+    public int getSlowConsumerQueueCapacity() {
+        return SLOW_CONSUMER_QUEUE_CAPACITY;
+    }
+
+    public long getSlowConsumerTimeoutMillis() {
+        return SLOW_CONSUMER_TIMEOUT_MILLIS;
+    }
+
+    public int getReplayBufferMessages() {
+        return REPLAY_BUFFER_MESSAGES;
+    }
+
+    public int getReplayBufferBytes() {
+        return REPLAY_BUFFER_BYTES;
+    }
+
+    public long getReplayGraceMillis() {
+        return REPLAY_GRACE_MILLIS;
+    }
+
+    public String getJournalDirectory() {
+        return JOURNAL_DIRECTORY;
+    }
+
+    public int getJournalSegmentBytes() {
+        return JOURNAL_SEGMENT_BYTES;
+    }
+
+    public int getJournalSegments() {
+        return JOURNAL_SEGMENTS;
+    }
+
     public static Integer getRandomPort() {
         return randomPort;
     }
@@ -204,14 +338,30 @@ public class ServerEndpointConfig {
         return MAX_FRAME_PAYLOAD_LENGTH;
     }
 
+    public int getMaxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    public boolean isStreamFragments() {
+        return STREAM_FRAGMENTS;
+    }
+
     public boolean isUseEventExecutorGroup() {
-        return USE_EVENT_EXECUTOR_GROUP;
+        return EXECUTION_MODE == ExecutionMode.EXECUTOR_GROUP;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return EXECUTION_MODE;
     }
 
     public int getEventExecutorGroupThreads() {
         return EVENT_EXECUTOR_GROUP_THREADS;
     }
 
+    public int getSessionQueueCapacity() {
+        return SESSION_QUEUE_CAPACITY;
+    }
+
     public String getKeyPassword() {
         return KEY_PASSWORD;
     }
@@ -7,6 +7,7 @@ import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.util.AttributeKey;
 import io.github.avidbyte.annotation.BeforeHandshake;
 
@@ -20,9 +21,53 @@ import java.nio.ByteBuffer;
  */
 public class Session{
     private final Channel channel;
+    private final TopicRegistry topicRegistry;
+    private volatile Object state;
+    private volatile SlowConsumerHandler slowConsumerHandler;
+    private volatile ReplayHandler replayHandler;
+    private volatile boolean conflating;
 
     Session(Channel channel) {
+        this(channel, null);
+    }
+
+    Session(Channel channel, TopicRegistry topicRegistry) {
         this.channel = channel;
+        this.topicRegistry = topicRegistry;
+    }
+
+    /**
+     * subscribe to messages published to a topic of the endpoint, until unsubscribed or closed
+     * @param topic topic, may contain the wildcards {@code *} (one word) and {@code #} (any number of words)
+     * @see TopicRegistry
+     */
+    public void subscribe(String topic) {
+        topicRegistry().subscribe(this, topic);
+    }
+
+    public void unsubscribe(String topic) {
+        topicRegistry().unsubscribe(this, topic);
+    }
+
+    private TopicRegistry topicRegistry() {
+        if (topicRegistry == null) {
+            throw new IllegalStateException("Session " + id() + " does not belong to an endpoint");
+        }
+        return topicRegistry;
+    }
+
+    /**
+     * per-connection data of the endpoint, a plain field instead of a channel attribute lookup.
+     * Endpoints with {@link io.github.avidbyte.annotation.EndpointScope#SINGLETON} scope keep their connection state here
+     * @param state state
+     */
+    public void setState(Object state) {
+        this.state = state;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getState() {
+        return (T) state;
     }
 
     /**
@@ -34,40 +79,208 @@ public class Session{
     }
 
     public ChannelFuture sendText(String message) {
-        return channel.writeAndFlush(new TextWebSocketFrame(message));
+        return send(new TextWebSocketFrame(message));
     }
 
     public ChannelFuture sendText(ByteBuf byteBuf) {
-        return channel.writeAndFlush(new TextWebSocketFrame(byteBuf));
+        return send(new TextWebSocketFrame(byteBuf));
     }
 
     public ChannelFuture sendText(ByteBuffer byteBuffer) {
         ByteBuf buffer = channel.alloc().buffer(byteBuffer.remaining());
         buffer.writeBytes(byteBuffer);
-        return channel.writeAndFlush(new TextWebSocketFrame(buffer));
+        return send(new TextWebSocketFrame(buffer));
     }
 
     public ChannelFuture sendText(TextWebSocketFrame textWebSocketFrame) {
-        return channel.writeAndFlush(textWebSocketFrame);
+        return send(textWebSocketFrame);
     }
 
     public ChannelFuture sendBinary(byte[] bytes) {
         ByteBuf buffer = channel.alloc().buffer(bytes.length);
-        return channel.writeAndFlush(new BinaryWebSocketFrame(buffer.writeBytes(bytes)));
+        return send(new BinaryWebSocketFrame(buffer.writeBytes(bytes)));
     }
 
     public ChannelFuture sendBinary(ByteBuf byteBuf) {
-        return channel.writeAndFlush(new BinaryWebSocketFrame(byteBuf));
+        return send(new BinaryWebSocketFrame(byteBuf));
     }
 
     public ChannelFuture sendBinary(ByteBuffer byteBuffer) {
         ByteBuf buffer = channel.alloc().buffer(byteBuffer.remaining());
         buffer.writeBytes(byteBuffer);
-        return channel.writeAndFlush(new BinaryWebSocketFrame(buffer));
+        return send(new BinaryWebSocketFrame(buffer));
     }
 
     public ChannelFuture sendBinary(BinaryWebSocketFrame binaryWebSocketFrame) {
-        return channel.writeAndFlush(binaryWebSocketFrame);
+        return send(binaryWebSocketFrame);
+    }
+
+    /**
+     * send a message encoded beforehand, the message is not released
+     * @param message message
+     * @return ChannelFuture
+     */
+    public ChannelFuture sendPrepared(PreparedMessage message) {
+        return send(message.retainedMessage(channel));
+    }
+
+    /**
+     * send a message that is obsolete once a newer one with the same key is sent, e.g. the latest price of a symbol.
+     * While the channel is not writable, the held message of the key is replaced in place and its future completes
+     * with the one replacing it. Held messages are sent in the order their keys were first held once the channel is
+     * writable again, messages sent otherwise are not held and may overtake them
+     * @param key key, compared by equals
+     * @param message message
+     * @return ChannelFuture
+     */
+    public ChannelFuture sendConflated(Object key, String message) {
+        return sendConflated(key, new TextWebSocketFrame(message));
+    }
+
+    public ChannelFuture sendConflated(Object key, byte[] bytes) {
+        ByteBuf buffer = channel.alloc().buffer(bytes.length);
+        return sendConflated(key, new BinaryWebSocketFrame(buffer.writeBytes(bytes)));
+    }
+
+    private ChannelFuture sendConflated(Object key, WebSocketFrame frame) {
+        ConflationHandler.ConflatedMessage message = new ConflationHandler.ConflatedMessage(key, frame);
+        if (!conflating) {
+            addConflationHandler();
+        }
+        return channel.writeAndFlush(message);
+    }
+
+    private synchronized void addConflationHandler() {
+        if (!conflating) {
+            channel.pipeline().addLast(new ConflationHandler());
+            conflating = true;
+        }
+    }
+
+    /**
+     * queue a text message without flushing it, it is sent by the next {@link #flush()} or send.
+     * Writing a burst of messages and flushing once sends them with one system call
+     * @param message message
+     * @return ChannelFuture
+     */
+    public ChannelFuture writeText(String message) {
+        return write(new TextWebSocketFrame(message));
+    }
+
+    public ChannelFuture writeText(ByteBuf byteBuf) {
+        return write(new TextWebSocketFrame(byteBuf));
+    }
+
+    public ChannelFuture writeText(ByteBuffer byteBuffer) {
+        ByteBuf buffer = channel.alloc().buffer(byteBuffer.remaining());
+        buffer.writeBytes(byteBuffer);
+        return write(new TextWebSocketFrame(buffer));
+    }
+
+    public ChannelFuture writeText(TextWebSocketFrame textWebSocketFrame) {
+        return write(textWebSocketFrame);
+    }
+
+    /**
+     * queue a binary message without flushing it, it is sent by the next {@link #flush()} or send
+     * @param bytes bytes
+     * @return ChannelFuture
+     */
+    public ChannelFuture writeBinary(byte[] bytes) {
+        ByteBuf buffer = channel.alloc().buffer(bytes.length);
+        return write(new BinaryWebSocketFrame(buffer.writeBytes(bytes)));
+    }
+
+    public ChannelFuture writeBinary(ByteBuf byteBuf) {
+        return write(new BinaryWebSocketFrame(byteBuf));
+    }
+
+    public ChannelFuture writeBinary(ByteBuffer byteBuffer) {
+        ByteBuf buffer = channel.alloc().buffer(byteBuffer.remaining());
+        buffer.writeBytes(byteBuffer);
+        return write(new BinaryWebSocketFrame(buffer));
+    }
+
+    public ChannelFuture writeBinary(BinaryWebSocketFrame binaryWebSocketFrame) {
+        return write(binaryWebSocketFrame);
+    }
+
+    /**
+     * queue a message encoded beforehand without flushing it, the message is not released
+     * @param message message
+     * @return ChannelFuture
+     */
+    public ChannelFuture writePrepared(PreparedMessage message) {
+        return write(message.retainedMessage(channel));
+    }
+
+    /**
+     * with {@link SlowConsumerPolicy#BLOCK_UNTIL_WRITABLE}, senders off the event loop wait here while the channel is
+     * not writable
+     */
+    private ChannelFuture send(Object message) {
+        awaitWritable();
+        return channel.writeAndFlush(message);
+    }
+
+    private ChannelFuture write(Object message) {
+        awaitWritable();
+        return channel.write(message);
+    }
+
+    private void awaitWritable() {
+        SlowConsumerHandler handler = slowConsumerHandler;
+        if (handler != null) {
+            handler.awaitWritable();
+        }
+    }
+
+    void setSlowConsumerHandler(SlowConsumerHandler slowConsumerHandler) {
+        this.slowConsumerHandler = slowConsumerHandler;
+    }
+
+    SlowConsumerHandler getSlowConsumerHandler() {
+        return slowConsumerHandler;
+    }
+
+    /**
+     * the token a new connection of the client resumes this session with, see {@link #resume(String, long)}. Hand it
+     * to the client, e.g. in the first message
+     * @return token, {@code null} unless the endpoint sets replay-buffer-messages
+     */
+    public String getResumeToken() {
+        ReplayHandler handler = replayHandler;
+        return handler == null ? null : handler.token();
+    }
+
+    /**
+     * @return number of the last text or binary message sent, they are numbered from 1 since the session with
+     * {@link #getResumeToken()} began, 0 unless the endpoint sets replay-buffer-messages
+     */
+    public long getLastSeq() {
+        ReplayHandler handler = replayHandler;
+        return handler == null ? 0 : handler.lastSeq();
+    }
+
+    /**
+     * continue the session of an earlier connection of the client: this session takes over its token and numbering,
+     * the earlier connection is closed if still open, and the messages it sent after {@code lastSeq} are sent again.
+     * Call it in {@link io.github.avidbyte.annotation.OnOpen} before sending anything
+     * @param token   resume token of the earlier session
+     * @param lastSeq number of the last message the client received, counting the text and binary messages
+     * @return {@code false} if the token is unknown or its grace period is over, or if messages after {@code lastSeq}
+     * are no longer kept, the client then needs a full resync
+     */
+    public boolean resume(String token, long lastSeq) {
+        ReplayHandler handler = replayHandler;
+        if (handler == null) {
+            throw new IllegalStateException("Session " + id() + " is not resumable, set replay-buffer-messages on the endpoint");
+        }
+        return handler.resume(token, lastSeq);
+    }
+
+    void setReplayHandler(ReplayHandler replayHandler) {
+        this.replayHandler = replayHandler;
     }
 
     public <T> void setAttribute(String name, T value) {
@@ -229,6 +442,10 @@ public class Session{
         return channel.read();
     }
 
+    /**
+     * send the messages written since the last flush
+     * @return Channel
+     */
     public Channel flush() {
         return channel.flush();
     }
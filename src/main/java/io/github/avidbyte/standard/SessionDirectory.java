@@ -0,0 +1,39 @@
+package io.github.avidbyte.standard;
+
+/**
+ * Knows which node holds the sessions bound to a key, so that
+ * {@link SessionRegistry#sendTo(String, CharSequence) sendTo(key, ...)} reaches exactly that node instead of every
+ * node. Declare one as a bean next to a {@link ClusterBus}.
+ * <p>
+ * Nodes are identified by {@link ClusterRelay#getNodeId()}. Each node looks keys up once and keeps the owners in a
+ * near-cache for a while, a message that reaches a node the key has left meanwhile is looked up again there. The
+ * methods are called on the sending thread of the relay, never on an event loop, so an implementation may ask a remote
+ * store, e.g. Redis.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public interface SessionDirectory {
+
+    /**
+     * the key now lives on the node, replacing the node it lived on
+     *
+     * @param key  key
+     * @param node node id
+     */
+    void register(String key, String node);
+
+    /**
+     * the node no longer holds sessions bound to the key, ignored if the key lives on another node by now
+     *
+     * @param key  key
+     * @param node node id
+     */
+    void unregister(String key, String node);
+
+    /**
+     * @param key key
+     * @return the node the key lives on, {@code null} if none
+     */
+    String lookup(String key);
+}
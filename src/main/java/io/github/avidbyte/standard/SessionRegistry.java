@@ -0,0 +1,450 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelId;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCounted;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+
+/**
+ * The open sessions of one endpoint, maintained by the framework: a session is added right before
+ * {@link io.github.avidbyte.annotation.OnOpen} and removed right after {@link io.github.avidbyte.annotation.OnClose}.
+ * <p>
+ * Sessions are found by {@link ChannelId} in constant time and can be indexed under user defined keys
+ * ({@link #index(Session, String, Object)}), for example a user id or a tenant, the index entries go away with the
+ * session. Sessions are also kept in one shard per {@link EventLoop}, so that a fan-out can visit the sessions of
+ * each event loop together.
+ * <p>
+ * Lookups by id and by index key go through maps shared by every event loop, so they take constant time instead of
+ * visiting every shard and merging what each holds. This is a deliberate trade-off. Adding or removing a session also
+ * writes to the shared map besides its shard, but a {@link ConcurrentHashMap} write only locks the bin of its key, so
+ * event loops contend only when their ids share a bin. SessionRegistryBenchmark in the example module compares
+ * churning the registry with churning the shards alone.
+ * <p>
+ * Obtain it as a parameter of any endpoint method, or from
+ * {@link io.github.avidbyte.autoconfigure.WebsocketServerBootStrap#getSessionRegistry(Class)}.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class SessionRegistry {
+
+    /**
+     * index of the keys of {@link #bindKey(Session, String)}
+     */
+    private static final String KEY_INDEX = SessionRegistry.class.getName() + ".key";
+
+    private final Map<ChannelId, Entry> sessions = new ConcurrentHashMap<>();
+
+    private final Map<EventLoop, Map<ChannelId, Session>> shards = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<Object, Set<Session>>> indexes = new ConcurrentHashMap<>();
+
+    private volatile ClusterRelay clusterRelay;
+    private volatile String clusterName;
+    private volatile MessageJournal journal;
+    private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * @param id id of the channel
+     * @return the session, {@code null} if it is not open
+     */
+    public Session get(ChannelId id) {
+        Entry entry = sessions.get(id);
+        return entry == null ? null : entry.session;
+    }
+
+    /**
+     * @return number of open sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * visit every open session, sessions opened or closed meanwhile may or may not be visited
+     *
+     * @param action action
+     */
+    public void forEach(Consumer<Session> action) {
+        for (Map<ChannelId, Session> shard : shards.values()) {
+            shard.values().forEach(action);
+        }
+    }
+
+    /**
+     * send a text message to the selected sessions, the text is encoded only once and, for the sessions that
+     * negotiated compression without context takeover, compressed only once. With a {@link ClusterBus}, a message to
+     * all sessions goes to the sessions of every node, a selector only selects among the sessions of this node
+     *
+     * @param text     text
+     * @param selector sessions to send to, {@code null} for all of them
+     * @return number of the message in the {@link #getJournal() journal}, -1 if it was not journaled
+     * @see #broadcast(PreparedMessage, Predicate)
+     */
+    public long broadcastText(CharSequence text, Predicate<Session> selector) {
+        byte[] payload = text.toString().getBytes(StandardCharsets.UTF_8);
+        return broadcast(PreparedMessage.OPCODE_TEXT, payload, selector);
+    }
+
+    /**
+     * send a binary message to the selected sessions, the bytes are copied only once and, for the sessions that
+     * negotiated compression without context takeover, compressed only once. With a {@link ClusterBus}, a message to
+     * all sessions goes to the sessions of every node
+     *
+     * @param bytes    bytes, not changed afterwards
+     * @param selector sessions to send to, {@code null} for all of them
+     * @return number of the message in the {@link #getJournal() journal}, -1 if it was not journaled
+     * @see #broadcast(PreparedMessage, Predicate)
+     */
+    public long broadcastBinary(byte[] bytes, Predicate<Session> selector) {
+        return broadcast(PreparedMessage.OPCODE_BINARY, bytes, selector);
+    }
+
+    private long broadcast(int opcode, byte[] payload, Predicate<Session> selector) {
+        ClusterRelay relay = clusterRelay;
+        if (relay != null && selector == null) {
+            relay.relay(clusterName, null, opcode, payload);
+        }
+        PreparedMessage message = PreparedMessage.prepare(opcode, payload, true, compressionLevel);
+        try {
+            return broadcast(message, selector);
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * send a frame to the selected sessions.
+     * <p>
+     * Every session gets a retained duplicate of the same content, nothing is encoded or copied per session. One task
+     * is submitted to each event loop, which selects and writes to its own sessions, so the caller does not wait for
+     * the writes and channels are not written to from foreign threads. The selector runs on the event loops and must
+     * not block.
+     *
+     * @param frame    frame, released once it has been handed to every session
+     * @param selector sessions to send to, {@code null} for all of them
+     */
+    public void broadcast(WebSocketFrame frame, Predicate<Session> selector) {
+        try {
+            fanOut(frame, selector, channel -> frame.retainedDuplicate());
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * one task per event loop writing to the selected sessions of that loop, the message is retained while a task holds it
+     */
+    private void fanOut(ReferenceCounted message, Predicate<Session> selector, Function<Channel, Object> encoder) {
+        for (Map.Entry<EventLoop, Map<ChannelId, Session>> shard : shards.entrySet()) {
+            Map<ChannelId, Session> shardSessions = shard.getValue();
+            if (shardSessions.isEmpty()) {
+                continue;
+            }
+            message.retain();
+            try {
+                shard.getKey().execute(() -> {
+                    try {
+                        for (Session session : shardSessions.values()) {
+                            Channel channel = session.channel();
+                            if (channel.isActive() && (selector == null || selector.test(session))) {
+                                channel.writeAndFlush(encoder.apply(channel), channel.voidPromise());
+                            }
+                        }
+                    } finally {
+                        message.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down, so are its channels
+                message.release();
+            }
+        }
+    }
+
+    /**
+     * send a prepared message to the selected sessions, the same frame bytes are written to every channel. A message
+     * to all sessions is kept in the {@link #getJournal() journal} first, the sessions get it even if that fails
+     *
+     * @param message  message, not released
+     * @param selector sessions to send to, {@code null} for all of them
+     * @return number of the message in the journal, to {@link MessageJournal#replay(Session, long) replay} after it,
+     * -1 if it was not journaled
+     * @see #broadcast(WebSocketFrame, Predicate)
+     */
+    public long broadcast(PreparedMessage message, Predicate<Session> selector) {
+        MessageJournal journal = this.journal;
+        long seq = journal != null && selector == null ? journal.tryAppend(message) : -1;
+        fanOut(message, selector, channel -> message.retainedMessage(channel));
+        return seq;
+    }
+
+    /**
+     * @return level the messages of {@link #broadcastText(CharSequence, Predicate)}, {@link #broadcastBinary(byte[], Predicate)}
+     * and {@code sendTo} are compressed at, the compression-level of the endpoint. Pass it to
+     * {@link PreparedMessage#text(CharSequence, boolean, int)} to prepare messages the same way
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel 1 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * keep every message sent to all sessions in the journal, those of other nodes included, so a client can
+     * {@link MessageJournal#replay(Session, long) replay} what it missed
+     *
+     * @param journal journal, {@code null} to stop
+     */
+    public void setJournal(MessageJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return the journal of messages sent to all sessions, {@code null} if there is none
+     */
+    public MessageJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * index the session under the key, replacing the key it had in that index
+     *
+     * @param session session
+     * @param index   name of the index, e.g. "userId"
+     * @param key     key
+     */
+    public void index(Session session, String index, Object key) {
+        Entry entry = sessions.get(session.id());
+        if (entry == null) {
+            throw new IllegalStateException("Session " + session.id() + " is not open");
+        }
+        Object previous = entry.keys.put(index, key);
+        if (key.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            removeFromIndex(index, previous, session);
+        }
+        // add inside compute, a concurrent removal may otherwise drop the set right before the add
+        indexes.computeIfAbsent(index, name -> new ConcurrentHashMap<>()).compute(key, (k, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+            }
+            set.add(session);
+            return set;
+        });
+        if (!sessions.containsKey(session.id())) {
+            // closed while being indexed
+            removeFromIndex(index, key, session);
+        }
+    }
+
+    /**
+     * remove the session from the index
+     *
+     * @param session session
+     * @param index   name of the index
+     */
+    public void unindex(Session session, String index) {
+        Entry entry = sessions.get(session.id());
+        if (entry != null) {
+            Object key = entry.keys.remove(index);
+            if (key != null) {
+                removeFromIndex(index, key, session);
+            }
+        }
+    }
+
+    /**
+     * @param index name of the index
+     * @param key   key
+     * @return sessions indexed under the key, empty if there are none
+     */
+    public Set<Session> find(String index, Object key) {
+        Map<Object, Set<Session>> keys = indexes.get(index);
+        Set<Session> found = keys == null ? null : keys.get(key);
+        return found == null ? Collections.emptySet() : Collections.unmodifiableSet(found);
+    }
+
+    /**
+     * @param index name of the index
+     * @param key   key
+     * @return one of the sessions indexed under the key, {@code null} if there are none
+     */
+    public Session findOne(String index, Object key) {
+        Set<Session> found = find(index, key);
+        for (Session session : found) {
+            return session;
+        }
+        return null;
+    }
+
+    /**
+     * bind the session to a key, e.g. a user id, which {@link #sendTo(String, CharSequence)} sends to. Several sessions
+     * may share a key. With a {@link SessionDirectory}, the key is registered as living on this node, replacing the
+     * node it lived on
+     *
+     * @param session session
+     * @param key     key, replacing the key the session was bound to
+     */
+    public void bindKey(Session session, String key) {
+        Entry entry = sessions.get(session.id());
+        Object previous = entry == null ? null : entry.keys.get(KEY_INDEX);
+        index(session, KEY_INDEX, key);
+        if (previous != null && !previous.equals(key)) {
+            keyReleased(previous);
+        }
+        ClusterRelay relay = clusterRelay;
+        if (relay != null) {
+            relay.keyBound(key);
+        }
+    }
+
+    /**
+     * undo {@link #bindKey(Session, String)}, done when the session closes
+     *
+     * @param session session
+     */
+    public void unbindKey(Session session) {
+        Entry entry = sessions.get(session.id());
+        Object key = entry == null ? null : entry.keys.get(KEY_INDEX);
+        if (key != null) {
+            unindex(session, KEY_INDEX);
+            keyReleased(key);
+        }
+    }
+
+    /**
+     * send a text message to the sessions bound to the key. If this node has none, with a {@link SessionDirectory} the
+     * message goes to the one node the key lives on, and is dropped without
+     *
+     * @param key  key
+     * @param text text
+     */
+    public void sendTo(String key, CharSequence text) {
+        sendTo(key, PreparedMessage.OPCODE_TEXT, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * send a binary message to the sessions bound to the key, see {@link #sendTo(String, CharSequence)}
+     *
+     * @param key   key
+     * @param bytes bytes, not changed afterwards
+     */
+    public void sendTo(String key, byte[] bytes) {
+        sendTo(key, PreparedMessage.OPCODE_BINARY, bytes);
+    }
+
+    private void sendTo(String key, int opcode, byte[] payload) {
+        if (find(KEY_INDEX, key).isEmpty()) {
+            ClusterRelay relay = clusterRelay;
+            if (relay != null) {
+                relay.relayToKey(clusterName, key, opcode, payload);
+            }
+            return;
+        }
+        PreparedMessage message = PreparedMessage.prepare(opcode, payload, true, compressionLevel);
+        try {
+            sendToLocal(key, message);
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * @return whether a session of this node is bound to the key
+     */
+    boolean sendToLocal(String key, PreparedMessage message) {
+        Set<Session> found = find(KEY_INDEX, key);
+        for (Session session : found) {
+            Channel channel = session.channel();
+            if (channel.isActive()) {
+                channel.writeAndFlush(message.retainedMessage(channel), channel.voidPromise());
+            }
+        }
+        return !found.isEmpty();
+    }
+
+    /**
+     * tell the directory once no session of this node is bound to the key any more
+     */
+    private void keyReleased(Object key) {
+        ClusterRelay relay = clusterRelay;
+        if (relay != null && find(KEY_INDEX, key).isEmpty()) {
+            relay.keyUnbound((String) key);
+        }
+    }
+
+    void relayTo(ClusterRelay clusterRelay, String clusterName) {
+        this.clusterName = clusterName;
+        this.clusterRelay = clusterRelay;
+    }
+
+    /**
+     * @return sessions grouped by the event loop of their channel
+     */
+    Map<EventLoop, Map<ChannelId, Session>> shards() {
+        return shards;
+    }
+
+    void add(Session session) {
+        sessions.put(session.id(), new Entry(session));
+        shards.computeIfAbsent(session.channel().eventLoop(), loop -> new ConcurrentHashMap<>())
+                .put(session.id(), session);
+    }
+
+    void remove(Session session) {
+        Entry entry = sessions.remove(session.id());
+        if (entry == null) {
+            return;
+        }
+        Map<ChannelId, Session> shard = shards.get(session.channel().eventLoop());
+        if (shard != null) {
+            shard.remove(session.id());
+        }
+        for (Map.Entry<String, Object> key : entry.keys.entrySet()) {
+            removeFromIndex(key.getKey(), key.getValue(), session);
+        }
+        Object key = entry.keys.get(KEY_INDEX);
+        if (key != null) {
+            keyReleased(key);
+        }
+    }
+
+    private void removeFromIndex(String index, Object key, Session session) {
+        Map<Object, Set<Session>> keys = indexes.get(index);
+        if (keys != null) {
+            keys.computeIfPresent(key, (k, set) -> {
+                set.remove(session);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private static final class Entry {
+        private final Session session;
+        private final Map<String, Object> keys = new ConcurrentHashMap<>(2);
+
+        private Entry(Session session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.avidbyte.standard;
+
+import io.github.avidbyte.util.TransportUtils;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * One worker {@link EventLoopGroup} and one handler {@link EventExecutorGroup} shared by every
+ * {@link WebsocketServer}, so that endpoints on different ports do not each size their own pools for the whole machine.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class SharedEventLoopGroups {
+
+    private final boolean epoll;
+    private final EventLoopGroup worker;
+    private final int eventExecutorGroupThreads;
+    private EventExecutorGroup eventExecutorGroup;
+    private ForkJoinPool workStealingPool;
+
+    public SharedEventLoopGroups(boolean epoll, int workerLoopGroupThreads, int eventExecutorGroupThreads) {
+        this.epoll = epoll;
+        this.worker = TransportUtils.createEventLoopGroup(epoll, workerLoopGroupThreads, new DefaultThreadFactory("netty-websocket-worker", false));
+        this.eventExecutorGroupThreads = eventExecutorGroupThreads == 0 ? 16 : eventExecutorGroupThreads;
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    public EventLoopGroup getWorker() {
+        return worker;
+    }
+
+    /**
+     * the executor group is only created once an endpoint asks for it
+     *
+     * @return EventExecutorGroup
+     */
+    public synchronized EventExecutorGroup getEventExecutorGroup() {
+        if (eventExecutorGroup == null) {
+            eventExecutorGroup = new DefaultEventExecutorGroup(eventExecutorGroupThreads, new DefaultThreadFactory("netty-websocket-executor", false));
+        }
+        return eventExecutorGroup;
+    }
+
+    /**
+     * the work-stealing pool is only created once an endpoint asks for it, it has as many threads as the executor group
+     *
+     * @return ForkJoinPool
+     */
+    public synchronized ForkJoinPool getWorkStealingPool() {
+        if (workStealingPool == null) {
+            workStealingPool = OrderedSessionExecutor.newWorkStealingPool(eventExecutorGroupThreads, "netty-websocket-executor");
+        }
+        return workStealingPool;
+    }
+
+    public synchronized void shutdownGracefully() {
+        worker.shutdownGracefully().syncUninterruptibly();
+        if (eventExecutorGroup != null) {
+            eventExecutorGroup.shutdownGracefully().syncUninterruptibly();
+        }
+        if (workStealingPool != null) {
+            workStealingPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package io.github.avidbyte.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.ThreadExecutorMap;
+import io.netty.util.internal.ThrowableUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies the {@link SlowConsumerPolicy} of the endpoint to the messages written through the channel while its write
+ * buffer is above the high water mark. Installed last, so it sees the messages of {@link Session} and
+ * {@link SessionRegistry} before they are compressed and encoded, control frames the framework writes from its own
+ * handler context do not pass it. Fragments of a message are never dropped, a message would be cut otherwise.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class SlowConsumerHandler extends ChannelDuplexHandler {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(SlowConsumerHandler.class);
+
+    private static final IllegalStateException DROPPED = ThrowableUtil.unknownStackTrace(
+            new IllegalStateException("message dropped, the connection is not writable"), SlowConsumerHandler.class, "write(...)");
+
+    private static final ClosedChannelException CLOSED = ThrowableUtil.unknownStackTrace(
+            new ClosedChannelException(), SlowConsumerHandler.class, "channelInactive(...)");
+
+    private final SlowConsumerPolicy policy;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    /**
+     * a lock rather than a monitor, a virtual thread waiting on a monitor pins its carrier thread
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition writable = lock.newCondition();
+
+    /**
+     * messages held by drop-oldest, only touched on the event loop
+     */
+    private final ArrayDeque<PendingWrite> queue = new ArrayDeque<>();
+
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * set while {@link #writeExempt(Runnable)} runs, only touched on the event loop
+     */
+    private boolean exempt;
+
+    private volatile Channel channel;
+
+    SlowConsumerHandler(SlowConsumerPolicy policy, int queueCapacity, long timeoutMillis) {
+        this.policy = policy;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * with block-until-writable, wait until the channel is writable, closed, or unwritable for longer than the timeout.
+     * Only threads that serve one session at a time wait: virtual threads and threads of the application. On a
+     * work-stealing pool the wait is a managed block, which the pool makes up for with another worker. Threads of
+     * event loops and executor groups run the callbacks of many sessions, they return immediately and the message waits
+     * in the write buffer, bounded by the timeout
+     */
+    void awaitWritable() {
+        Channel channel = this.channel;
+        if (policy != SlowConsumerPolicy.BLOCK_UNTIL_WRITABLE || channel == null || channel.isWritable()
+                || ThreadExecutorMap.currentExecutor() != null) {
+            return;
+        }
+        if (!ForkJoinTask.inForkJoinPool()) {
+            await(channel);
+            return;
+        }
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() {
+                    await(channel);
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return channel.isWritable() || !channel.isActive();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void await(Channel channel) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (!channel.isWritable() && channel.isActive()) {
+                if (remaining <= 0) {
+                    return;
+                }
+                remaining = writable.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * run writes whose messages are passed on whatever the policy, such as the catch-up a client asked for. Call on
+     * the event loop of the channel
+     *
+     * @param writes writes
+     */
+    void writeExempt(Runnable writes) {
+        exempt = true;
+        try {
+            writes.run();
+        } finally {
+            exempt = false;
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+        if (!channel.isWritable()) {
+            scheduleTimeout(ctx);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        cancelTimeout();
+        failQueue(CLOSED);
+        signalWritable();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (isFragment(msg)) {
+            // keep the order of the messages held before it
+            drain(ctx, false);
+            ctx.write(msg, promise);
+            return;
+        }
+        if (exempt || !isWholeMessage(msg)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        if (policy == SlowConsumerPolicy.DROP_NEWEST && !ctx.channel().isWritable()) {
+            drop(msg, promise);
+            return;
+        }
+        if (policy == SlowConsumerPolicy.DROP_OLDEST && (!ctx.channel().isWritable() || !queue.isEmpty())) {
+            if (queue.size() == queueCapacity) {
+                PendingWrite oldest = queue.poll();
+                drop(oldest.msg, oldest.promise);
+            }
+            queue.add(new PendingWrite(msg, promise));
+            return;
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            cancelTimeout();
+            if (!queue.isEmpty()) {
+                drain(ctx, true);
+                ctx.flush();
+            }
+            signalWritable();
+        } else {
+            scheduleTimeout(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancelTimeout();
+        failQueue(CLOSED);
+        signalWritable();
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * write the held messages, only while the channel is writable if asked to
+     */
+    private void drain(ChannelHandlerContext ctx, boolean whileWritable) {
+        PendingWrite pending;
+        while ((!whileWritable || ctx.channel().isWritable()) && (pending = queue.poll()) != null) {
+            ctx.write(pending.msg, pending.promise);
+        }
+    }
+
+    private void scheduleTimeout(ChannelHandlerContext ctx) {
+        if ((policy != SlowConsumerPolicy.BLOCK_UNTIL_WRITABLE && policy != SlowConsumerPolicy.DISCONNECT_AFTER) || timeout != null) {
+            return;
+        }
+        timeout = ctx.executor().schedule(() -> {
+            timeout = null;
+            if (!ctx.channel().isWritable()) {
+                LOGGER.warn("closing " + ctx.channel() + ", it was not writable for " + timeoutMillis + " ms");
+                ctx.channel().close();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+    private void signalWritable() {
+        if (policy == SlowConsumerPolicy.BLOCK_UNTIL_WRITABLE) {
+            lock.lock();
+            try {
+                writable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void failQueue(Throwable cause) {
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            ReferenceCountUtil.release(pending.msg);
+            if (!pending.promise.isVoid()) {
+                pending.promise.tryFailure(cause);
+            }
+        }
+    }
+
+    private static void drop(Object msg, ChannelPromise promise) {
+        ReferenceCountUtil.release(msg);
+        // a void promise would report the failure to the pipeline
+        if (!promise.isVoid()) {
+            promise.tryFailure(DROPPED);
+        }
+    }
+
+    private static boolean isFragment(Object msg) {
+        return msg instanceof ContinuationWebSocketFrame
+                || (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) && !((WebSocketFrame) msg).isFinalFragment();
+    }
+
+    /**
+     * a complete text or binary message, or a {@link PreparedMessage} frame, which is always complete
+     */
+    private static boolean isWholeMessage(Object msg) {
+        if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) {
+            return ((WebSocketFrame) msg).isFinalFragment();
+        }
+        return msg instanceof ByteBuf;
+    }
+
+    private static final class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.avidbyte.standard;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * What happens to the messages sent to a connection whose write buffer is above its high water mark, that is while
+ * {@link Session#isWritable()} is {@code false}.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * keep queueing in the write buffer of the connection
+     */
+    NONE,
+
+    /**
+     * senders on virtual threads, threads of the application or a work-stealing pool wait until the connection is
+     * writable again. Event loops and executor group threads serve many sessions and do not wait, their messages queue
+     * in the write buffer. The connection is closed if it stays unwritable longer than the slow consumer timeout
+     */
+    BLOCK_UNTIL_WRITABLE,
+
+    /**
+     * drop the messages sent while the connection is unwritable
+     */
+    DROP_NEWEST,
+
+    /**
+     * hold the messages sent while the connection is unwritable in a bounded queue, dropping the oldest one when it is
+     * full, and send them once the connection is writable again
+     */
+    DROP_OLDEST,
+
+    /**
+     * close the connection if it stays unwritable longer than the slow consumer timeout
+     */
+    DISCONNECT_AFTER;
+
+    /**
+     * @param value none, block-until-writable, drop-newest, drop-oldest or disconnect-after, empty for none
+     * @return SlowConsumerPolicy
+     */
+    public static SlowConsumerPolicy parse(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return NONE;
+        }
+        String name = value.trim().toUpperCase().replace('-', '_');
+        for (SlowConsumerPolicy policy : values()) {
+            if (policy.name().equals(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown slow consumer policy '" + value + "', expected one of: none, block-until-writable, drop-newest, drop-oldest, disconnect-after");
+    }
+}
@@ -0,0 +1,185 @@
+package io.github.avidbyte.standard;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Connects nodes over plain TCP without a broker: every node listens on an address and connects to the addresses of
+ * the other nodes, and sends each batch, length prefixed, over its connection to every other node, or only to the node
+ * it is for. A node answers a new connection with its id. Connections that fail or drop are retried every second,
+ * batches sent meanwhile are lost for that node.
+ * <p>
+ * Meant for tests and benchmarks of several nodes on one machine, e.g. on loopback addresses, the connections are
+ * neither encrypted nor authenticated.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class TcpClusterBus implements ClusterBus {
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(TcpClusterBus.class);
+
+    private static final int MAX_BATCH_BYTES = 64 * 1024 * 1024;
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final InetSocketAddress bindAddress;
+    private final List<InetSocketAddress> peers;
+    private final EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("cluster-bus", true));
+    private final Map<InetSocketAddress, Channel> connections = new ConcurrentHashMap<>();
+    private final Map<String, Channel> nodes = new ConcurrentHashMap<>();
+    private volatile Channel serverChannel;
+    private volatile boolean closed;
+
+    /**
+     * @param bindAddress address this node listens on
+     * @param peers       addresses of the other nodes
+     */
+    public TcpClusterBus(InetSocketAddress bindAddress, List<InetSocketAddress> peers) {
+        this.bindAddress = bindAddress;
+        this.peers = new ArrayList<>(peers);
+    }
+
+    @Override
+    public void start(String node, Consumer<byte[]> receiver) {
+        byte[] hello = node.getBytes(StandardCharsets.UTF_8);
+        try {
+            serverChannel = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new LengthFieldPrepender(4));
+                            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(MAX_BATCH_BYTES, 0, 4, 0, 4));
+                            ch.pipeline().addLast(new SimpleChannelInboundHandler<ByteBuf>() {
+                                @Override
+                                public void channelActive(ChannelHandlerContext ctx) {
+                                    // tells the connecting node which node it reached
+                                    ctx.writeAndFlush(Unpooled.wrappedBuffer(hello));
+                                }
+
+                                @Override
+                                protected void channelRead0(ChannelHandlerContext ctx, ByteBuf batch) {
+                                    receiver.accept(ByteBufUtil.getBytes(batch));
+                                }
+
+                                @Override
+                                public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                                    LOGGER.error(cause);
+                                    ctx.close();
+                                }
+                            });
+                        }
+                    }).bind(bindAddress).sync().channel();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while binding " + bindAddress, e);
+        }
+        for (InetSocketAddress peer : peers) {
+            connect(peer);
+        }
+    }
+
+    private void connect(InetSocketAddress peer) {
+        if (closed) {
+            return;
+        }
+        new Bootstrap().group(group).channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new LengthFieldPrepender(4));
+                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(MAX_BATCH_BYTES, 0, 4, 0, 4));
+                        ch.pipeline().addLast(new SimpleChannelInboundHandler<ByteBuf>() {
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx, ByteBuf hello) {
+                                String node = hello.toString(StandardCharsets.UTF_8);
+                                nodes.put(node, ch);
+                                ch.closeFuture().addListener(closeFuture -> nodes.remove(node, ch));
+                            }
+                        });
+                    }
+                })
+                .connect(peer).addListener((ChannelFutureListener) future -> {
+                    if (future.isSuccess()) {
+                        Channel channel = future.channel();
+                        connections.put(peer, channel);
+                        channel.closeFuture().addListener(closeFuture -> {
+                            connections.remove(peer, channel);
+                            scheduleConnect(peer);
+                        });
+                    } else {
+                        scheduleConnect(peer);
+                    }
+                });
+    }
+
+    private void scheduleConnect(InetSocketAddress peer) {
+        if (!closed) {
+            group.schedule(() -> connect(peer), RECONNECT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return number of other nodes currently connected to
+     */
+    public int connectedPeers() {
+        return connections.size();
+    }
+
+    @Override
+    public void send(byte[] batch) {
+        for (Channel channel : connections.values()) {
+            // every write wraps the same bytes, nothing is copied
+            channel.writeAndFlush(Unpooled.wrappedBuffer(batch));
+        }
+    }
+
+    @Override
+    public void send(String node, byte[] batch) {
+        Channel channel = nodes.get(node);
+        if (channel != null) {
+            channel.writeAndFlush(Unpooled.wrappedBuffer(batch));
+        } else {
+            // not introduced yet, the other nodes ignore it
+            send(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        group.shutdownGracefully();
+    }
+}
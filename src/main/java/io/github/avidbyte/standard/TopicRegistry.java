@@ -0,0 +1,418 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.Deflater;
+
+/**
+ * Topics the sessions of one endpoint subscribe to, and publishing to them.
+ * <p>
+ * Topics are words separated by dots, e.g. {@code prices.eu.SAP}. A subscription may use {@code *} for exactly one
+ * word and {@code #} for zero or more words, {@code prices.*.SAP} and {@code prices.#} both match the topic above.
+ * Published topics are plain.
+ * <p>
+ * Subscriptions are kept in one shard per {@link EventLoop}, each only read and changed on its own event loop:
+ * {@link #subscribe(Session, String)} hands the change to the event loop of the session, and a publish submits one
+ * task to each event loop, which finds and writes to its own subscribers. No lock is shared between event loops, and
+ * the message is encoded once for all of them. Subscriptions go away with the session.
+ * <p>
+ * Obtain it as a parameter of any endpoint method, or from
+ * {@link io.github.avidbyte.autoconfigure.WebsocketServerBootStrap#getTopicRegistry(Class)}.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class TopicRegistry {
+
+    private static final String ONE_WORD = "*";
+    private static final String ANY_WORDS = "#";
+
+    private final Map<EventLoop, Shard> shards = new ConcurrentHashMap<>();
+
+    private final Map<String, MessageJournal> journals = new ConcurrentHashMap<>();
+
+    private volatile ClusterRelay clusterRelay;
+    private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private volatile String clusterName;
+
+    /**
+     * subscribe the session to a topic or pattern, applied on the event loop of the session
+     *
+     * @param session session
+     * @param topic   topic, may contain the wildcards {@code *} and {@code #} as whole words
+     */
+    public void subscribe(Session session, String topic) {
+        boolean pattern = checkTopic(topic, true);
+        Channel channel = session.channel();
+        Shard shard = shards.computeIfAbsent(channel.eventLoop(), Shard::new);
+        runOn(channel.eventLoop(), () -> {
+            // a closed session has already been removed, or is about to be
+            if (channel.isActive()) {
+                shard.subscribe(session, topic, pattern);
+            }
+        });
+    }
+
+    /**
+     * @param session session
+     * @param topic   topic or pattern, as subscribed
+     */
+    public void unsubscribe(Session session, String topic) {
+        Shard shard = shards.get(session.channel().eventLoop());
+        if (shard != null) {
+            runOn(shard.eventLoop, () -> shard.unsubscribe(session, topic));
+        }
+    }
+
+    /**
+     * send a text message to the subscribers of the topic, the text is encoded once and, for the sessions that
+     * negotiated compression without context takeover, compressed once. With a {@link ClusterBus}, the subscribers
+     * of every node get it
+     *
+     * @param topic topic, without wildcards
+     * @param text  text
+     * @return number of the message in the journal of the topic, -1 if it was not journaled
+     */
+    public long publish(String topic, CharSequence text) {
+        return publish(topic, PreparedMessage.OPCODE_TEXT, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * send a binary message to the subscribers of the topic, the bytes are copied once. With a {@link ClusterBus}, the
+     * subscribers of every node get it
+     *
+     * @param topic topic, without wildcards
+     * @param bytes bytes, not changed afterwards
+     * @return number of the message in the journal of the topic, -1 if it was not journaled
+     */
+    public long publish(String topic, byte[] bytes) {
+        return publish(topic, PreparedMessage.OPCODE_BINARY, bytes);
+    }
+
+    private long publish(String topic, int opcode, byte[] payload) {
+        checkTopic(topic, false);
+        ClusterRelay relay = clusterRelay;
+        if (relay != null) {
+            relay.relay(clusterName, topic, opcode, payload);
+        }
+        PreparedMessage message = PreparedMessage.prepare(opcode, payload, true, compressionLevel);
+        try {
+            return publish(topic, message);
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * send a prepared message to the subscribers of the topic on this node. The caller does not wait for the writes,
+     * each event loop writes to its own subscribers. The message is kept in the journal of the topic first, the
+     * subscribers get it even if that fails
+     *
+     * @param topic   topic, without wildcards
+     * @param message message, not released
+     * @return number of the message in the journal of the topic, -1 if it was not journaled
+     */
+    public long publish(String topic, PreparedMessage message) {
+        checkTopic(topic, false);
+        long seq = -1;
+        if (!journals.isEmpty()) {
+            MessageJournal journal = journals.get(topic);
+            if (journal != null) {
+                seq = journal.tryAppend(message);
+            }
+        }
+        String[] words = null;
+        for (Shard shard : shards.values()) {
+            // a shard without subscribers is not skipped, a subscription may be on its way to it
+            if (words == null) {
+                words = topic.split("\\.", -1);
+            }
+            String[] topicWords = words;
+            message.retain();
+            try {
+                shard.eventLoop.execute(() -> {
+                    try {
+                        shard.publish(topic, topicWords, message);
+                    } finally {
+                        message.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down, so are its channels
+                message.release();
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * @return level published text and bytes are compressed at, the compression-level of the endpoint
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel 1 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * keep every message published to the topic in the journal, those of other nodes included, so a client can
+     * {@link MessageJournal#replay(Session, long) replay} what it missed
+     *
+     * @param topic   topic, without wildcards
+     * @param journal journal, {@code null} to stop
+     */
+    public void setJournal(String topic, MessageJournal journal) {
+        checkTopic(topic, false);
+        if (journal == null) {
+            journals.remove(topic);
+        } else {
+            journals.put(topic, journal);
+        }
+    }
+
+    /**
+     * @param topic topic
+     * @return the journal of the topic, {@code null} if there is none
+     */
+    public MessageJournal getJournal(String topic) {
+        return journals.get(topic);
+    }
+
+    void relayTo(ClusterRelay clusterRelay, String clusterName) {
+        this.clusterName = clusterName;
+        this.clusterRelay = clusterRelay;
+    }
+
+    /**
+     * drop every subscription of the session
+     */
+    void remove(Session session) {
+        Shard shard = shards.get(session.channel().eventLoop());
+        if (shard != null) {
+            runOn(shard.eventLoop, () -> shard.remove(session));
+        }
+    }
+
+    private static void runOn(EventLoop eventLoop, Runnable task) {
+        if (eventLoop.inEventLoop()) {
+            task.run();
+        } else {
+            try {
+                eventLoop.execute(task);
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down, so are its channels
+            }
+        }
+    }
+
+    /**
+     * @return whether the topic contains wildcards
+     */
+    private static boolean checkTopic(String topic, boolean allowWildcards) {
+        if (topic == null || topic.isEmpty()) {
+            throw new IllegalArgumentException("topic must not be empty");
+        }
+        boolean pattern = false;
+        for (String word : topic.split("\\.", -1)) {
+            if (ONE_WORD.equals(word) || ANY_WORDS.equals(word)) {
+                if (!allowWildcards) {
+                    throw new IllegalArgumentException("Wildcards are only allowed in subscriptions: " + topic);
+                }
+                pattern = true;
+            } else if (word.isEmpty() || word.contains(ONE_WORD) || word.contains(ANY_WORDS)) {
+                throw new IllegalArgumentException("Invalid topic '" + topic + "', words must not be empty and "
+                        + ONE_WORD + " and " + ANY_WORDS + " must be whole words");
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * subscriptions of the sessions of one event loop, only touched on that event loop
+     */
+    private static final class Shard {
+
+        private final EventLoop eventLoop;
+
+        /**
+         * plain topics, looked up with one hash lookup per publish
+         */
+        private final Map<String, Set<Session>> topics = new HashMap<>();
+
+        /**
+         * patterns, matched word by word
+         */
+        private final Node patterns = new Node();
+        private int patternCount;
+
+        private final Map<Session, Set<String>> subscriptions = new HashMap<>();
+
+        private Shard(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+
+        private void subscribe(Session session, String topic, boolean pattern) {
+            if (!subscriptions.computeIfAbsent(session, s -> new HashSet<>(4)).add(topic)) {
+                return;
+            }
+            if (pattern) {
+                patterns.add(topic.split("\\.", -1), 0, session);
+                patternCount++;
+            } else {
+                topics.computeIfAbsent(topic, t -> new HashSet<>(4)).add(session);
+            }
+        }
+
+        private void unsubscribe(Session session, String topic) {
+            Set<String> sessionTopics = subscriptions.get(session);
+            if (sessionTopics == null || !sessionTopics.remove(topic)) {
+                return;
+            }
+            if (sessionTopics.isEmpty()) {
+                subscriptions.remove(session);
+            }
+            removeSubscription(session, topic);
+        }
+
+        private void remove(Session session) {
+            Set<String> sessionTopics = subscriptions.remove(session);
+            if (sessionTopics != null) {
+                for (String topic : sessionTopics) {
+                    removeSubscription(session, topic);
+                }
+            }
+        }
+
+        private void removeSubscription(Session session, String topic) {
+            String[] words = topic.split("\\.", -1);
+            if (isPattern(words)) {
+                patterns.remove(words, 0, session);
+                patternCount--;
+            } else {
+                Set<Session> subscribers = topics.get(topic);
+                if (subscribers != null && subscribers.remove(session) && subscribers.isEmpty()) {
+                    topics.remove(topic);
+                }
+            }
+        }
+
+        private void publish(String topic, String[] words, PreparedMessage message) {
+            Set<Session> subscribers = topics.get(topic);
+            if (patternCount == 0) {
+                if (subscribers != null) {
+                    for (Session session : subscribers) {
+                        write(session, message);
+                    }
+                }
+                return;
+            }
+            // a session matching the topic more than once gets the message once
+            Set<Session> matched = subscribers == null ? new HashSet<>() : new HashSet<>(subscribers);
+            patterns.match(words, 0, matched);
+            for (Session session : matched) {
+                write(session, message);
+            }
+        }
+
+        private static void write(Session session, PreparedMessage message) {
+            Channel channel = session.channel();
+            if (channel.isActive()) {
+                channel.writeAndFlush(message.retainedMessage(channel), channel.voidPromise());
+            }
+        }
+
+        private static boolean isPattern(String[] words) {
+            for (String word : words) {
+                if (ONE_WORD.equals(word) || ANY_WORDS.equals(word)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * a word of the patterns, with the sessions whose pattern ends here
+     */
+    private static final class Node {
+
+        private Map<String, Node> children;
+        private Set<Session> sessions;
+
+        private void add(String[] words, int index, Session session) {
+            if (index == words.length) {
+                if (sessions == null) {
+                    sessions = new HashSet<>(4);
+                }
+                sessions.add(session);
+                return;
+            }
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            children.computeIfAbsent(words[index], w -> new Node()).add(words, index + 1, session);
+        }
+
+        /**
+         * @return whether this node is no longer needed
+         */
+        private boolean remove(String[] words, int index, Session session) {
+            if (index == words.length) {
+                if (sessions != null && sessions.remove(session) && sessions.isEmpty()) {
+                    sessions = null;
+                }
+            } else if (children != null) {
+                Node child = children.get(words[index]);
+                if (child != null && child.remove(words, index + 1, session)) {
+                    children.remove(words[index]);
+                    if (children.isEmpty()) {
+                        children = null;
+                    }
+                }
+            }
+            return sessions == null && children == null;
+        }
+
+        private void match(String[] words, int index, Set<Session> matched) {
+            if (index == words.length) {
+                if (sessions != null) {
+                    matched.addAll(sessions);
+                }
+            }
+            if (children == null) {
+                return;
+            }
+            Node anyWords = children.get(ANY_WORDS);
+            if (anyWords != null) {
+                // # takes zero or more of the remaining words
+                for (int next = index; next <= words.length; next++) {
+                    anyWords.match(words, next, matched);
+                }
+            }
+            if (index == words.length) {
+                return;
+            }
+            Node word = children.get(words[index]);
+            if (word != null) {
+                word.match(words, index + 1, matched);
+            }
+            Node oneWord = children.get(ONE_WORD);
+            if (oneWord != null) {
+                oneWord.match(words, index + 1, matched);
+            }
+        }
+    }
+}
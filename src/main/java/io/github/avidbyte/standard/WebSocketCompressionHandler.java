@@ -0,0 +1,163 @@
+package io.github.avidbyte.standard;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.DeflateFrameServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Negotiates permessage-deflate and deflate-frame like {@code WebSocketServerCompressionHandler}, with the level,
+ * windows, context takeover and minimum message size of the endpoint. When the server is to start every message with
+ * an empty context or to use a smaller window, the parameter is added to the client's offer, which RFC 7692 lets the
+ * server answer with unasked. Clients are only asked to drop their context if they offer to, some clients fail the
+ * handshake otherwise. A {@link PreparedMessage} compressed once can be sent to every session without server context
+ * takeover and with the full window.
+ * <p>
+ * The handler is added to the pipeline while the upgrade request is being handled, after it was read, so the request
+ * is handed to it with {@link #negotiate(ChannelHandlerContext, HttpRequest)}.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+final class WebSocketCompressionHandler extends WebSocketServerExtensionHandler {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT = "server_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW = "server_max_window_bits";
+
+    /**
+     * the JDK's zlib only compresses with the full window, a smaller one needs JZlib
+     */
+    static final boolean JZLIB_PRESENT = ClassUtils.isPresent("com.jcraft.jzlib.Deflater", WebSocketCompressionHandler.class.getClassLoader());
+
+    private static final int MAX_WINDOW_BITS = PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE;
+
+    /**
+     * memLevel the encoders of netty use
+     */
+    private static final int MEM_LEVEL = 8;
+
+    WebSocketCompressionHandler(ServerEndpointConfig config) {
+        super(perMessageDeflate(config), new DeflateFrameServerExtensionHandshaker(config.getCompressionLevel(), filterProvider(config)));
+    }
+
+    /**
+     * negotiate the extensions the upgrade request offers, the response is completed when it is written. Call it while
+     * this is the last handler: the request is passed on, as a copy without content, to the tail of the pipeline
+     *
+     * @param ctx context of this handler
+     * @param req upgrade request, not released
+     * @throws Exception Exception
+     */
+    void negotiate(ChannelHandlerContext ctx, HttpRequest req) throws Exception {
+        onHttpRequestChannelRead(ctx, new DefaultHttpRequest(req.protocolVersion(), req.method(), req.uri(), req.headers()));
+    }
+
+    /**
+     * @param config config
+     * @return window of the server's compressor, the full one if a smaller one is configured but JZlib is missing
+     */
+    static int serverWindowBits(ServerEndpointConfig config) {
+        return JZLIB_PRESENT ? config.getCompressionServerMaxWindowBits() : MAX_WINDOW_BITS;
+    }
+
+    /**
+     * Estimates the zlib state a permessage-deflate connection keeps between messages at most, once it has sent and
+     * received a compressed message: a compressor needs {@code 2^(windowBits+2) + 2^(memLevel+9)} bytes, a decompressor
+     * {@code 2^windowBits} plus about 7 KB. A side without context takeover only holds its state while a message is
+     * being processed. The decompressor is counted even with client no context takeover, clients that do not offer it
+     * keep their context.
+     *
+     * @param config config
+     * @return bytes per connection
+     */
+    static long memoryPerConnection(ServerEndpointConfig config) {
+        long memory = 0;
+        if (!config.isCompressionServerNoContextTakeover()) {
+            memory += (1L << (serverWindowBits(config) + 2)) + (1L << (MEM_LEVEL + 9));
+        }
+        // the JDK's inflater always allocates the full window
+        return memory + (1L << MAX_WINDOW_BITS) + 7 * 1024;
+    }
+
+    private static WebSocketServerExtensionHandshaker perMessageDeflate(ServerEndpointConfig config) {
+        int serverWindowBits = serverWindowBits(config);
+        PerMessageDeflateServerExtensionHandshaker handshaker = new PerMessageDeflateServerExtensionHandshaker(
+                config.getCompressionLevel(), JZLIB_PRESENT, config.getCompressionClientMaxWindowBits(),
+                true, config.isCompressionClientNoContextTakeover(), filterProvider(config));
+        if (!config.isCompressionServerNoContextTakeover() && serverWindowBits == MAX_WINDOW_BITS) {
+            return handshaker;
+        }
+        return new OfferAdjustingHandshaker(handshaker, config.isCompressionServerNoContextTakeover(), serverWindowBits);
+    }
+
+    private static WebSocketExtensionFilterProvider filterProvider(ServerEndpointConfig config) {
+        int minPayloadSize = config.getCompressionMinPayloadSize();
+        if (minPayloadSize == 0) {
+            return WebSocketExtensionFilterProvider.DEFAULT;
+        }
+        WebSocketExtensionFilter encoderFilter = frame -> frame.content().readableBytes() < minPayloadSize;
+        return new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                return encoderFilter;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+    }
+
+    /**
+     * adds {@code server_no_context_takeover} and lowers {@code server_max_window_bits} in the permessage-deflate offer
+     */
+    private static final class OfferAdjustingHandshaker implements WebSocketServerExtensionHandshaker {
+
+        private final WebSocketServerExtensionHandshaker delegate;
+        private final boolean serverNoContext;
+        private final int serverWindowBits;
+
+        private OfferAdjustingHandshaker(WebSocketServerExtensionHandshaker delegate, boolean serverNoContext, int serverWindowBits) {
+            this.delegate = delegate;
+            this.serverNoContext = serverNoContext;
+            this.serverWindowBits = serverWindowBits;
+        }
+
+        @Override
+        public WebSocketServerExtension handshakeExtension(WebSocketExtensionData extensionData) {
+            if (!PERMESSAGE_DEFLATE.equals(extensionData.name())) {
+                return delegate.handshakeExtension(extensionData);
+            }
+            Map<String, String> parameters = new HashMap<>(extensionData.parameters());
+            if (serverNoContext) {
+                parameters.put(SERVER_NO_CONTEXT, null);
+            }
+            if (serverWindowBits < MAX_WINDOW_BITS && windowBits(parameters.get(SERVER_MAX_WINDOW)) > serverWindowBits) {
+                parameters.put(SERVER_MAX_WINDOW, Integer.toString(serverWindowBits));
+            }
+            return delegate.handshakeExtension(new WebSocketExtensionData(extensionData.name(), parameters));
+        }
+
+        private static int windowBits(String value) {
+            try {
+                return value == null ? MAX_WINDOW_BITS : Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // left for the delegate to reject
+                return Integer.MIN_VALUE;
+            }
+        }
+    }
+}
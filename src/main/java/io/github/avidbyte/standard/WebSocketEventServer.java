@@ -2,35 +2,35 @@ package io.github.avidbyte.standard;
 
 import io.github.avidbyte.support.*;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CorruptedWebSocketFrameException;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
-import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
 import org.springframework.beans.TypeMismatchException;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 
 /**
+ * Dispatches the websocket lifecycle of a connection to its endpoint.
+ * <p>
+ * The {@link MethodMapping} and endpoint instance are resolved once at handshake and passed in by the handler bound
+ * to the connection, so dispatching a frame does not look anything up by path or channel attribute.
+ *
  * @author Aaron
  * @since 1.0
  */
 public class WebSocketEventServer {
 
-    private static final AttributeKey<Object> IMPLEMENT_KEY = AttributeKey.valueOf("WEBSOCKET_IMPLEMENT");
     public static final AttributeKey<Session> SESSION_KEY = AttributeKey.valueOf("WEBSOCKET_SESSION");
-    private static final AttributeKey<String> PATH_KEY = AttributeKey.valueOf("WEBSOCKET_PATH");
     public static final AttributeKey<Map<String, String>> URI_TEMPLATE = AttributeKey.valueOf("WEBSOCKET_URI_TEMPLATE");
     public static final AttributeKey<Map<String, List<String>>> URI_PARAM = AttributeKey.valueOf("WEBSOCKET_URI_PARAM");
-    private final Map<String, MethodMapping> pathMethodMappingMap = new HashMap<>();
     private final ServerEndpointConfig config;
-    private final Set<WsPathMatcher> pathMatchers = new HashSet<>();
+    private final PathRouter<MethodMapping> router = new PathRouter<>();
     private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(WebSocketEventServer.class);
 
     public WebSocketEventServer(MethodMapping methodMapping, ServerEndpointConfig config, String path) {
@@ -38,29 +38,31 @@ public class WebSocketEventServer {
         this.config = config;
     }
 
-    public boolean hasBeforeHandshake(Channel channel, String path) {
-        MethodMapping methodMapping = getMethodMapping(path, channel);
-        return methodMapping.getBeforeHandshake() != null;
-    }
-
-    public void doBeforeHandshake(Channel channel, FullHttpRequest req, String path) {
-        MethodMapping methodMapping = null;
-        methodMapping = getMethodMapping(path, channel);
-
-        Object implement = null;
+    /**
+     * create the endpoint instance and the {@link Session} of a new connection
+     *
+     * @param channel       channel
+     * @param methodMapping endpoint matched by the request path
+     * @return endpoint instance, {@code null} if it could not be created
+     */
+    public Object newEndpoint(Channel channel, MethodMapping methodMapping) {
+        Object implement;
         try {
             implement = methodMapping.getEndpointInstance();
         } catch (Exception e) {
             LOGGER.error(e);
-            return;
+            return null;
         }
-        channel.attr(IMPLEMENT_KEY).set(implement);
-        Session session = new Session(channel);
+        Session session = new Session(channel, methodMapping.getTopicRegistry());
         channel.attr(SESSION_KEY).set(session);
-        Method beforeHandshake = methodMapping.getBeforeHandshake();
+        return implement;
+    }
+
+    public void doBeforeHandshake(Channel channel, FullHttpRequest req, MethodMapping methodMapping, Object implement) {
+        MethodInvoker beforeHandshake = methodMapping.getBeforeHandshakeInvoker();
         if (beforeHandshake != null) {
             try {
-                beforeHandshake.invoke(implement, methodMapping.getBeforeHandshakeArgs(channel, req));
+                beforeHandshake.invoke(implement, channel, req);
             } catch (TypeMismatchException e) {
                 throw e;
             } catch (Throwable t) {
@@ -69,149 +71,98 @@ public class WebSocketEventServer {
         }
     }
 
-    public void doOnOpen(Channel channel, FullHttpRequest req, String path) {
-        MethodMapping methodMapping = getMethodMapping(path, channel);
-
-        Object implement = channel.attr(IMPLEMENT_KEY).get();
-        if (implement == null) {
+    public void doOnOpen(Channel channel, FullHttpRequest req, MethodMapping methodMapping, Object implement) {
+        methodMapping.getSessionRegistry().add(channel.attr(SESSION_KEY).get());
+        MethodInvoker onOpen = methodMapping.getOnOpenInvoker();
+        if (onOpen != null) {
             try {
-                implement = methodMapping.getEndpointInstance();
-                channel.attr(IMPLEMENT_KEY).set(implement);
-            } catch (Exception e) {
-                LOGGER.error(e);
-                return;
-            }
-            Session session = new Session(channel);
-            channel.attr(SESSION_KEY).set(session);
-        }
-
-        Method onOpenMethod = methodMapping.getOnOpen();
-        if (onOpenMethod != null) {
-            try {
-                onOpenMethod.invoke(implement, methodMapping.getOnOpenArgs(channel, req));
+                onOpen.invoke(implement, channel, req);
             } catch (TypeMismatchException e) {
                 LOGGER.error(e);
                 throw e;
-            } catch (InvocationTargetException e) {
-                LOGGER.error(e);
-                Throwable cause = e.getCause();
-                cause.printStackTrace(); // 这将打印出实际的原因
-            } catch (IllegalAccessException e) {
-                LOGGER.error(e);
-                e.printStackTrace();
-            }
-            catch (Throwable t) {
+            } catch (Throwable t) {
                 LOGGER.error(t);
             }
         }
     }
 
-    public void doOnClose(Channel channel) {
-        Attribute<String> attrPath = channel.attr(PATH_KEY);
-        MethodMapping methodMapping;
-        if (pathMethodMappingMap.size() == 1) {
-            methodMapping = pathMethodMappingMap.values().iterator().next();
-        } else {
-            String path = attrPath.get();
-            methodMapping = pathMethodMappingMap.get(path);
-            if (methodMapping == null) {
-                return;
+    public void doOnClose(Channel channel, MethodMapping methodMapping, Object implement) {
+        MethodInvoker onClose = methodMapping.getOnCloseInvoker();
+        if (onClose != null) {
+            try {
+                onClose.invoke(implement, channel, null);
+            } catch (Throwable t) {
+                LOGGER.error(t);
             }
         }
-        if (methodMapping.getOnClose() != null) {
-            if (!channel.hasAttr(SESSION_KEY)) {
-                return;
-            }
-            Object implement = channel.attr(IMPLEMENT_KEY).get();
+        Session session = channel.attr(SESSION_KEY).get();
+        if (session != null) {
+            methodMapping.getSessionRegistry().remove(session);
+            methodMapping.getTopicRegistry().remove(session);
+        }
+        try {
+            methodMapping.releaseEndpointInstance(implement);
+        } catch (Throwable t) {
+            LOGGER.error(t);
+        }
+    }
+
+    public void doOnError(Channel channel, Throwable throwable, MethodMapping methodMapping, Object implement) {
+        MethodInvoker onError = methodMapping.getOnErrorInvoker();
+        if (onError != null) {
             try {
-                methodMapping.getOnClose().invoke(implement, methodMapping.getOnCloseArgs(channel));
+                onError.invoke(implement, channel, throwable);
             } catch (Throwable t) {
                 LOGGER.error(t);
             }
         }
     }
 
-
-    public void doOnError(Channel channel, Throwable throwable) {
-        Attribute<String> attrPath = channel.attr(PATH_KEY);
-        MethodMapping methodMapping;
-        if (pathMethodMappingMap.size() == 1) {
-            methodMapping = pathMethodMappingMap.values().iterator().next();
-        } else {
-            String path = attrPath.get();
-            methodMapping = pathMethodMappingMap.get(path);
-        }
-        if (methodMapping.getOnError() != null) {
-            if (!channel.hasAttr(SESSION_KEY)) {
-                return;
-            }
-            Object implement = channel.attr(IMPLEMENT_KEY).get();
+    public void doOnMessage(Channel channel, WebSocketFrame frame, MethodMapping methodMapping, Object implement) {
+        MethodInvoker onMessage = methodMapping.getOnMessageInvoker();
+        if (onMessage != null) {
             try {
-                Method method = methodMapping.getOnError();
-                Object[] args = methodMapping.getOnErrorArgs(channel, throwable);
-                method.invoke(implement, args);
+                onMessage.invoke(implement, channel, frame);
+            } catch (CorruptedWebSocketFrameException e) {
+                // text that is not valid UTF-8
+                channel.writeAndFlush(new CloseWebSocketFrame(e.closeStatus())).addListener(ChannelFutureListener.CLOSE);
+                doOnError(channel, e, methodMapping, implement);
             } catch (Throwable t) {
                 LOGGER.error(t);
+            } finally {
+                // the frame is released once this returns
+                TextFragmentDecoder.messageHandled(channel);
             }
         }
     }
 
-    public void doOnMessage(Channel channel, WebSocketFrame frame) {
-        Attribute<String> attrPath = channel.attr(PATH_KEY);
-        MethodMapping methodMapping;
-        if (pathMethodMappingMap.size() == 1) {
-            methodMapping = pathMethodMappingMap.values().iterator().next();
-        } else {
-            String path = attrPath.get();
-            methodMapping = pathMethodMappingMap.get(path);
-        }
-        if (methodMapping.getOnMessage() != null) {
-            TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
-            Object implement = channel.attr(IMPLEMENT_KEY).get();
+    public void doOnBinary(Channel channel, WebSocketFrame frame, MethodMapping methodMapping, Object implement) {
+        MethodInvoker onBinary = methodMapping.getOnBinaryInvoker();
+        if (onBinary != null) {
             try {
-                methodMapping.getOnMessage().invoke(implement, methodMapping.getOnMessageArgs(channel, textFrame));
+                onBinary.invoke(implement, channel, frame);
             } catch (Throwable t) {
                 LOGGER.error(t);
             }
         }
     }
 
-    public void doOnBinary(Channel channel, WebSocketFrame frame) {
-        Attribute<String> attrPath = channel.attr(PATH_KEY);
-        MethodMapping methodMapping;
-        if (pathMethodMappingMap.size() == 1) {
-            methodMapping = pathMethodMappingMap.values().iterator().next();
-        } else {
-            String path = attrPath.get();
-            methodMapping = pathMethodMappingMap.get(path);
-        }
-        if (methodMapping.getOnBinary() != null) {
-            BinaryWebSocketFrame binaryWebSocketFrame = (BinaryWebSocketFrame) frame;
-            Object implement = channel.attr(IMPLEMENT_KEY).get();
+    public void doOnEvent(Channel channel, Object evt, MethodMapping methodMapping, Object implement) {
+        MethodInvoker onEvent = methodMapping.getOnEventInvoker();
+        if (onEvent != null) {
             try {
-                methodMapping.getOnBinary().invoke(implement, methodMapping.getOnBinaryArgs(channel, binaryWebSocketFrame));
+                onEvent.invoke(implement, channel, evt);
             } catch (Throwable t) {
                 LOGGER.error(t);
             }
         }
     }
 
-    public void doOnEvent(Channel channel, Object evt) {
-        Attribute<String> attrPath = channel.attr(PATH_KEY);
-        MethodMapping methodMapping;
-        if (pathMethodMappingMap.size() == 1) {
-            methodMapping = pathMethodMappingMap.values().iterator().next();
-        } else {
-            String path = attrPath.get();
-            methodMapping = pathMethodMappingMap.get(path);
-        }
-        if (methodMapping.getOnEvent() != null) {
-            if (!channel.hasAttr(SESSION_KEY)) {
-                return;
-            }
-            Object implement = channel.attr(IMPLEMENT_KEY).get();
+    public void doOnWritabilityChanged(Channel channel, boolean writable, MethodMapping methodMapping, Object implement) {
+        MethodInvoker onWritabilityChanged = methodMapping.getOnWritabilityChangedInvoker();
+        if (onWritabilityChanged != null) {
             try {
-                methodMapping.getOnEvent().invoke(implement, methodMapping.getOnEventArgs(channel, evt));
+                onWritabilityChanged.invoke(implement, channel, writable);
             } catch (Throwable t) {
                 LOGGER.error(t);
             }
@@ -226,34 +177,12 @@ public class WebSocketEventServer {
         return config.getPort();
     }
 
-    public Set<WsPathMatcher> getPathMatcherSet() {
-        return pathMatchers;
+    public PathRouter<MethodMapping> getRouter() {
+        return router;
     }
 
     public void addPathMethodMapping(String path, MethodMapping methodMapping) {
-        pathMethodMappingMap.put(path, methodMapping);
-        for (MethodArgumentResolver onOpenArgResolver : methodMapping.getOnOpenArgResolvers()) {
-            if (onOpenArgResolver instanceof PathParamMethodArgumentResolver) {
-                pathMatchers.add(new AntPathMatcherWrapper(path));
-                return;
-            }
-        }
-        pathMatchers.add(new DefaultPathMatcher(path));
-    }
-
-    private MethodMapping getMethodMapping(String path, Channel channel) {
-        MethodMapping methodMapping;
-        if (pathMethodMappingMap.size() == 1) {
-            methodMapping = pathMethodMappingMap.values().iterator().next();
-        } else {
-            Attribute<String> attrPath = channel.attr(PATH_KEY);
-            attrPath.set(path);
-            methodMapping = pathMethodMappingMap.get(path);
-            if (methodMapping == null) {
-                throw new RuntimeException("path " + path + " is not in pathMethodMappingMap ");
-            }
-        }
-        return methodMapping;
+        router.add(path, methodMapping);
     }
 
 }
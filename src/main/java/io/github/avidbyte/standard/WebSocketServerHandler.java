@@ -1,20 +1,49 @@
 package io.github.avidbyte.standard;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.codec.http.websocketx.*;
 
+import java.util.concurrent.Executor;
+
 /**
+ * Per-connection handler installed at handshake, bound to the endpoint the request path resolved to.
+ *
  * @author Aaron
  * @version 1.0
  */
 public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
 
     private final WebSocketEventServer webSocketEventServer;
+    private final MethodMapping methodMapping;
+    private final Object implement;
+    private final Executor sessionExecutor;
+    private final InboundBudgetHandler inboundBudget;
+    /**
+     * type of the fragmented message in progress, continuation frames only reach this handler with stream-fragments
+     */
+    private boolean textContinuation;
+
+    public WebSocketServerHandler(WebSocketEventServer webSocketEventServer, MethodMapping methodMapping, Object implement) {
+        this(webSocketEventServer, methodMapping, implement, null, null);
+    }
 
-    public WebSocketServerHandler(WebSocketEventServer webSocketEventServer) {
+    /**
+     * @param webSocketEventServer webSocketEventServer
+     * @param methodMapping        endpoint of the connection
+     * @param implement            endpoint instance of the connection
+     * @param sessionExecutor      executor running the callbacks of this session in order, {@code null} to run them on the handler's thread
+     * @param inboundBudget        budget the frames of this session are charged to, {@code null} if there is none
+     */
+    WebSocketServerHandler(WebSocketEventServer webSocketEventServer, MethodMapping methodMapping, Object implement, Executor sessionExecutor, InboundBudgetHandler inboundBudget) {
         this.webSocketEventServer = webSocketEventServer;
+        this.methodMapping = methodMapping;
+        this.implement = implement;
+        this.sessionExecutor = sessionExecutor;
+        this.inboundBudget = inboundBudget;
     }
 
     @Override
@@ -24,24 +53,67 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocke
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        webSocketEventServer.doOnError(ctx.channel(), cause);
+        Channel channel = ctx.channel();
+        if (cause instanceof TooLongFrameException) {
+            // message larger than max-message-size, the aggregator has already dropped it
+            ctx.writeAndFlush(new CloseWebSocketFrame(WebSocketCloseStatus.MESSAGE_TOO_BIG)).addListener(ChannelFutureListener.CLOSE);
+        }
+        dispatch(() -> webSocketEventServer.doOnError(channel, cause, methodMapping, implement));
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        webSocketEventServer.doOnClose(ctx.channel());
+        Channel channel = ctx.channel();
+        dispatch(() -> webSocketEventServer.doOnClose(channel, methodMapping, implement));
     }
 
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-        webSocketEventServer.doOnEvent(ctx.channel(), evt);
+        Channel channel = ctx.channel();
+        dispatch(() -> webSocketEventServer.doOnEvent(channel, evt, methodMapping, implement));
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        Channel channel = ctx.channel();
+        boolean writable = channel.isWritable();
+        if (methodMapping.getOnWritabilityChanged() != null) {
+            dispatch(() -> webSocketEventServer.doOnWritabilityChanged(channel, writable, methodMapping, implement));
+        }
+        // the slow consumer handler behind this one drains its queue on it
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    /**
+     * run a callback of this session, after every callback dispatched before it
+     *
+     * @param task task
+     */
+    void dispatch(Runnable task) {
+        if (sessionExecutor == null) {
+            task.run();
+        } else {
+            sessionExecutor.execute(task);
+        }
     }
 
     private void handleWebSocketFrame(ChannelHandlerContext ctx, WebSocketFrame frame) {
         if (frame instanceof TextWebSocketFrame) {
-            webSocketEventServer.doOnMessage(ctx.channel(), frame);
+            textContinuation = true;
+            dispatchFrame(ctx.channel(), frame, true);
+            return;
+        }
+        if (frame instanceof ContinuationWebSocketFrame) {
+            dispatchFrame(ctx.channel(), frame, textContinuation);
             return;
         }
+        if (frame instanceof BinaryWebSocketFrame) {
+            textContinuation = false;
+            dispatchFrame(ctx.channel(), frame, false);
+            return;
+        }
+        // control frames are done with once handled here
+        releaseBudget(frame.content().readableBytes());
         if (frame instanceof PingWebSocketFrame) {
             ctx.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
             return;
@@ -50,13 +122,43 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocke
             ctx.writeAndFlush(frame.retainedDuplicate()).addListener(ChannelFutureListener.CLOSE);
             return;
         }
-        if (frame instanceof BinaryWebSocketFrame) {
-            webSocketEventServer.doOnBinary(ctx.channel(), frame);
+    }
+
+    private void dispatchFrame(Channel channel, WebSocketFrame frame, boolean text) {
+        // the callback may move the reader index
+        int size = frame.content().readableBytes();
+        if (sessionExecutor == null) {
+            try {
+                invokeFrame(channel, frame, text);
+            } finally {
+                releaseBudget(size);
+            }
             return;
         }
-        if (frame instanceof PongWebSocketFrame) {
-            return;
+        // the frame is released by SimpleChannelInboundHandler once channelRead0 returns
+        frame.retain();
+        sessionExecutor.execute(() -> {
+            try {
+                invokeFrame(channel, frame, text);
+            } finally {
+                frame.release();
+                releaseBudget(size);
+            }
+        });
+    }
+
+    private void releaseBudget(int size) {
+        if (inboundBudget != null) {
+            inboundBudget.release(size);
+        }
+    }
+
+    private void invokeFrame(Channel channel, WebSocketFrame frame, boolean text) {
+        if (text) {
+            webSocketEventServer.doOnMessage(channel, frame, methodMapping, implement);
+        } else {
+            webSocketEventServer.doOnBinary(channel, frame, methodMapping, implement);
         }
     }
 
-}
\ No newline at end of file
+}
@@ -2,16 +2,17 @@ package io.github.avidbyte.standard;
 
 import io.github.avidbyte.support.ValueConstants;
 import io.github.avidbyte.util.SslUtils;
+import io.github.avidbyte.util.TransportUtils;
+import io.github.avidbyte.util.VirtualThreadUtils;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.cors.CorsConfig;
 import io.netty.handler.codec.http.cors.CorsConfigBuilder;
 import io.netty.handler.codec.http.cors.CorsHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
@@ -26,6 +27,8 @@ import javax.net.ssl.SSLException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Aaron
@@ -37,6 +40,8 @@ public class WebsocketServer {
 
     private final ServerEndpointConfig config;
 
+    private InboundMemoryBudget inboundMemoryBudget;
+
     private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(WebsocketServer.class);
 
     public WebsocketServer(WebSocketEventServer webSocketEventServer, ServerEndpointConfig serverEndpointConfig) {
@@ -46,6 +51,17 @@ public class WebsocketServer {
     }
 
     public void init() throws InterruptedException, SSLException {
+        init(null);
+    }
+
+    /**
+     * start the server
+     *
+     * @param sharedGroups worker and executor groups shared with the other servers, {@code null} to create dedicated ones
+     * @throws InterruptedException InterruptedException
+     * @throws SSLException         SSLException
+     */
+    public void init(SharedEventLoopGroups sharedGroups) throws InterruptedException, SSLException {
         EventExecutorGroup eventExecutorGroup = null;
         final SslContext sslCtx;
         if (!StringUtils.isEmpty(config.getKeyStore())) {
@@ -57,17 +73,52 @@ public class WebsocketServer {
         Boolean corsAllowCredentials = config.getCorsAllowCredentials();
         final CorsConfig corsConfig = createCorsConfig(corsOrigins, corsAllowCredentials);
 
-        if (config.isUseEventExecutorGroup()) {
-            eventExecutorGroup = new DefaultEventExecutorGroup(config.getEventExecutorGroupThreads() == 0 ? 16 : config.getEventExecutorGroupThreads());
+        boolean epoll = sharedGroups != null ? sharedGroups.isEpoll() : TransportUtils.useEpoll(config.getTransport());
+        ExecutionMode executionMode = config.getExecutionMode();
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS && !VirtualThreadUtils.isAvailable()) {
+            LOGGER.warn("virtual threads are not available on this JDK, port " + config.getPort() + " falls back to the executor-group execution mode");
+            executionMode = ExecutionMode.EXECUTOR_GROUP;
+        }
+        int executorThreads = config.getEventExecutorGroupThreads() == 0 ? 16 : config.getEventExecutorGroupThreads();
+        String executorThreadName = "netty-websocket-executor-" + config.getPort();
+        Executor handlerExecutor = null;
+        ForkJoinPool workStealingPool = null;
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            handlerExecutor = VirtualThreadUtils.executor();
+        } else if (executionMode == ExecutionMode.WORK_STEALING) {
+            if (sharedGroups != null) {
+                handlerExecutor = sharedGroups.getWorkStealingPool();
+            } else {
+                workStealingPool = OrderedSessionExecutor.newWorkStealingPool(executorThreads, executorThreadName);
+                handlerExecutor = workStealingPool;
+            }
+        } else if (executionMode == ExecutionMode.EXECUTOR_GROUP) {
+            if (sharedGroups != null) {
+                eventExecutorGroup = sharedGroups.getEventExecutorGroup();
+            } else {
+                eventExecutorGroup = new DefaultEventExecutorGroup(executorThreads, new DefaultThreadFactory(executorThreadName, false));
+            }
+        }
+        Executor finalHandlerExecutor = handlerExecutor;
+        if (config.isUseCompressionHandler()) {
+            if (config.getCompressionServerMaxWindowBits() < WebSocketCompressionHandler.serverWindowBits(config)) {
+                LOGGER.warn("compression-server-max-window-bits below 15 requires com.jcraft:jzlib, port " + config.getPort() + " compresses with the full window");
+            }
+            LOGGER.info("permessage-deflate on port " + config.getPort() + " keeps up to " + config.getCompressionMemoryPerConnection() / 1024 + " KB of compression state per connection");
+        }
+        int listeners = config.getReusePortListeners();
+        if (listeners > 1 && !epoll) {
+            LOGGER.warn("reuse-port-listeners requires the epoll transport, binding a single listener on port " + config.getPort());
+            listeners = 1;
         }
         String bossThreadName = "netty-websocket-boss-" + config.getPort();
         String workerThreadName = "netty-websocket-worker-" + config.getPort();
-        EventLoopGroup boss = new NioEventLoopGroup(config.getBossLoopGroupThreads(), new DefaultThreadFactory(bossThreadName, false));
-        EventLoopGroup worker = new NioEventLoopGroup(config.getWorkerLoopGroupThreads(), new DefaultThreadFactory(workerThreadName, false));
+        EventLoopGroup boss = TransportUtils.createEventLoopGroup(epoll, Math.max(config.getBossLoopGroupThreads(), listeners), new DefaultThreadFactory(bossThreadName, false));
+        EventLoopGroup worker = sharedGroups != null ? sharedGroups.getWorker() : TransportUtils.createEventLoopGroup(epoll, config.getWorkerLoopGroupThreads(), new DefaultThreadFactory(workerThreadName, false));
         ServerBootstrap bootstrap = new ServerBootstrap();
         EventExecutorGroup finalEventExecutorGroup = eventExecutorGroup;
         bootstrap.group(boss, worker)
-                .channel(NioServerSocketChannel.class)
+                .channel(TransportUtils.serverChannelClass(epoll))
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMillis())
                 .option(ChannelOption.SO_BACKLOG, config.getSoBacklog())
                 .childOption(ChannelOption.WRITE_SPIN_COUNT, config.getWriteSpinCount())
@@ -77,19 +128,23 @@ public class WebsocketServer {
                 .childOption(ChannelOption.SO_LINGER, config.getSoLinger())
                 .childOption(ChannelOption.ALLOW_HALF_CLOSURE, config.isAllowHalfClosure())
                 .handler(new LoggingHandler(LogLevel.DEBUG))
-                .childHandler(new ChannelInitializer<NioSocketChannel>() {
+                .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
-                    protected void initChannel(NioSocketChannel ch) {
+                    protected void initChannel(SocketChannel ch) {
                         ChannelPipeline pipeline = ch.pipeline();
                         if (sslCtx != null) {
                             pipeline.addFirst(sslCtx.newHandler(ch.alloc()));
                         }
+                        if (config.getFlushConsolidationAfterFlushes() > 0) {
+                            // behind the SslHandler, so coalesced writes are also encrypted into fewer records
+                            pipeline.addLast(new FlushConsolidationHandler(config.getFlushConsolidationAfterFlushes(), true));
+                        }
                         pipeline.addLast(new HttpServerCodec());
                         pipeline.addLast(new HttpObjectAggregator(65536));
                         if (corsConfig != null) {
                             pipeline.addLast(new CorsHandler(corsConfig));
                         }
-                        pipeline.addLast(new HttpServerHandler(webSocketEventServer, config, finalEventExecutorGroup, corsConfig != null));
+                        pipeline.addLast(new HttpServerHandler(webSocketEventServer, config, finalEventExecutorGroup, finalHandlerExecutor, inboundMemoryBudget, corsConfig != null));
                     }
                 });
 
@@ -101,31 +156,49 @@ public class WebsocketServer {
             bootstrap.childOption(ChannelOption.SO_SNDBUF, config.getSoSndBuf());
         }
 
-        ChannelFuture channelFuture;
-        if (ValueConstants.DEFAULT_ADDRESS.equals(config.getHost())) {
-            channelFuture = bootstrap.bind(config.getPort());
-        } else {
-            try {
-                channelFuture = bootstrap.bind(new InetSocketAddress(InetAddress.getByName(config.getHost()), config.getPort()));
-            } catch (UnknownHostException e) {
-                channelFuture = bootstrap.bind(config.getHost(), config.getPort());
-                LOGGER.error(e);
-            }
+        if (listeners > 1) {
+            // every bind registers its own server channel on the next boss event loop,
+            // the kernel then spreads incoming connections across the listening sockets
+            TransportUtils.enableReusePort(bootstrap);
         }
 
-        channelFuture.addListener(future -> {
-            if (!future.isSuccess()) {
-                Throwable cause = future.cause();
-                LOGGER.error(cause);
-            }
-        });
+        for (int i = 0; i < listeners; i++) {
+            bind(bootstrap).addListener(future -> {
+                if (!future.isSuccess()) {
+                    Throwable cause = future.cause();
+                    LOGGER.error(cause);
+                }
+            });
+        }
 
+        EventExecutorGroup ownedEventExecutorGroup = sharedGroups != null ? null : eventExecutorGroup;
+        ForkJoinPool ownedWorkStealingPool = workStealingPool;
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             boss.shutdownGracefully().syncUninterruptibly();
-            worker.shutdownGracefully().syncUninterruptibly();
+            if (sharedGroups == null) {
+                worker.shutdownGracefully().syncUninterruptibly();
+                if (ownedEventExecutorGroup != null) {
+                    ownedEventExecutorGroup.shutdownGracefully().syncUninterruptibly();
+                }
+                if (ownedWorkStealingPool != null) {
+                    ownedWorkStealingPool.shutdown();
+                }
+            }
         }));
     }
 
+    private ChannelFuture bind(ServerBootstrap bootstrap) {
+        if (ValueConstants.DEFAULT_ADDRESS.equals(config.getHost())) {
+            return bootstrap.bind(config.getPort());
+        }
+        try {
+            return bootstrap.bind(new InetSocketAddress(InetAddress.getByName(config.getHost()), config.getPort()));
+        } catch (UnknownHostException e) {
+            LOGGER.error(e);
+            return bootstrap.bind(config.getHost(), config.getPort());
+        }
+    }
+
     private CorsConfig createCorsConfig(String[] corsOrigins, Boolean corsAllowCredentials) {
         if (corsOrigins.length == 0) {
             return null;
@@ -150,4 +223,17 @@ public class WebsocketServer {
     public WebSocketEventServer getWebSocketEventServer() {
         return webSocketEventServer;
     }
+
+    public ServerEndpointConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * must be set before {@link #init(SharedEventLoopGroups)}
+     *
+     * @param inboundMemoryBudget budget shared by every server, {@code null} for none
+     */
+    public void setInboundMemoryBudget(InboundMemoryBudget inboundMemoryBudget) {
+        this.inboundMemoryBudget = inboundMemoryBudget;
+    }
 }
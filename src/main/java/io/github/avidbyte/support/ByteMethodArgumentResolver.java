@@ -2,7 +2,7 @@ package io.github.avidbyte.support;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.github.avidbyte.annotation.OnBinary;
 import org.springframework.core.MethodParameter;
 
@@ -21,10 +21,10 @@ public class ByteMethodArgumentResolver implements MethodArgumentResolver {
 
     @Override
     public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
-        BinaryWebSocketFrame binaryWebSocketFrame = (BinaryWebSocketFrame) object;
-        ByteBuf content = binaryWebSocketFrame.content();
+        WebSocketFrame frame = (WebSocketFrame) object;
+        ByteBuf content = frame.content();
         byte[] bytes = new byte[content.readableBytes()];
-        content.readBytes(bytes);
+        content.getBytes(content.readerIndex(), bytes);
         return bytes;
     }
 }
@@ -0,0 +1,31 @@
+package io.github.avidbyte.support;
+
+import io.github.avidbyte.annotation.OnBinary;
+import io.github.avidbyte.annotation.OnMessage;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.springframework.core.MethodParameter;
+
+import java.lang.reflect.Method;
+
+/**
+ * Resolves the {@link WebSocketFrame} itself, with stream-fragments it tells whether the fragment is the last one of
+ * the message ({@link WebSocketFrame#isFinalFragment()}). The frame is released once the method returns.
+ *
+ * @author Aaron
+ * @version 1.0
+ */
+public class FrameMethodArgumentResolver implements MethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Method method = parameter.getMethod();
+        return method != null && (method.isAnnotationPresent(OnMessage.class) || method.isAnnotationPresent(OnBinary.class))
+                && WebSocketFrame.class == parameter.getParameterType();
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return object;
+    }
+}
@@ -0,0 +1,260 @@
+package io.github.avidbyte.support;
+
+import io.github.avidbyte.standard.WebSocketEventServer;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+import java.util.*;
+
+/**
+ * Routes a request path to the endpoint registered for it.
+ * <p>
+ * Patterns made of literal segments and whole-segment {@code {var}} captures are compiled into a segment trie and
+ * resolved in a single pass over the path, which copies only the captured segments. Literal segments take precedence
+ * over captures, so the result does not depend on registration order. Any other pattern (ant wildcards, regex
+ * captures, partial-segment captures) falls back to {@link AntPathMatcherWrapper}, tried in registration order after
+ * the trie.
+ *
+ * @param <T> routed value
+ * @author Aaron
+ * @since 1.0
+ */
+public class PathRouter<T> {
+
+    private static final char SEPARATOR = '/';
+
+    private final Node<T> root = new Node<>();
+
+    private final List<Match<T>> fallbackRoutes = new ArrayList<>();
+
+    private final Set<String> patterns = new LinkedHashSet<>();
+
+    private int maxVariables;
+
+    /**
+     * register a pattern
+     *
+     * @param pattern path pattern, must start with '/'
+     * @param value   value returned for paths matching the pattern
+     */
+    public void add(String pattern, T value) {
+        if (!patterns.add(pattern)) {
+            throw new IllegalStateException("Duplicate path pattern '" + pattern + "'");
+        }
+        if (!isCompilable(pattern)) {
+            fallbackRoutes.add(new Match<>(pattern, value, new AntPathMatcherWrapper(pattern), null));
+            return;
+        }
+        Node<T> node = root;
+        List<String> variableNames = new ArrayList<>();
+        int start = 1;
+        while (true) {
+            int end = pattern.indexOf(SEPARATOR, start);
+            String segment = end == -1 ? pattern.substring(start) : pattern.substring(start, end);
+            if (isVariable(segment)) {
+                variableNames.add(segment.substring(1, segment.length() - 1));
+                if (node.variableChild == null) {
+                    node.variableChild = new Node<>();
+                }
+                node = node.variableChild;
+            } else {
+                node = node.addLiteral(segment);
+            }
+            if (end == -1) {
+                break;
+            }
+            start = end + 1;
+        }
+        maxVariables = Math.max(maxVariables, variableNames.size());
+        node.match = new Match<>(pattern, value, null, variableNames.isEmpty() ? null : variableNames.toArray(new String[0]));
+    }
+
+    /**
+     * resolve the request path, path variables are stored in {@link WebSocketEventServer#URI_TEMPLATE}
+     *
+     * @param decoder decoder of the request uri
+     * @param channel channel
+     * @return the match, {@code null} if no pattern matches
+     */
+    public Match<T> match(QueryStringDecoder decoder, Channel channel) {
+        String path = decoder.path();
+        if (!path.isEmpty() && path.charAt(0) == SEPARATOR) {
+            String[] captures = maxVariables == 0 ? null : new String[maxVariables];
+            Match<T> match = find(root, path, 1, captures, 0);
+            if (match != null) {
+                if (match.variableNames != null) {
+                    Map<String, String> variables = new LinkedHashMap<>(match.variableNames.length * 2);
+                    for (int i = 0; i < match.variableNames.length; i++) {
+                        variables.put(match.variableNames[i], captures[i]);
+                    }
+                    channel.attr(WebSocketEventServer.URI_TEMPLATE).set(variables);
+                }
+                return match;
+            }
+        }
+        for (Match<T> fallback : fallbackRoutes) {
+            if (fallback.matcher.matchAndExtract(decoder, channel)) {
+                return fallback;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return registered patterns in registration order
+     */
+    public Set<String> getPatterns() {
+        return Collections.unmodifiableSet(patterns);
+    }
+
+    /**
+     * segments are compared in place, only captured ones are copied out of the path
+     */
+    private Match<T> find(Node<T> node, String path, int start, String[] captures, int depth) {
+        int end = path.indexOf(SEPARATOR, start);
+        boolean last = end == -1;
+        int segmentEnd = last ? path.length() : end;
+
+        Node<T> literal = node.findLiteral(path, start, segmentEnd);
+        if (literal != null) {
+            Match<T> match = last ? literal.match : find(literal, path, end + 1, captures, depth);
+            if (match != null) {
+                return match;
+            }
+        }
+        Node<T> variable = node.variableChild;
+        if (variable != null && segmentEnd > start) {
+            Match<T> match = last ? variable.match : find(variable, path, end + 1, captures, depth + 1);
+            if (match != null) {
+                captures[depth] = path.substring(start, segmentEnd);
+                return match;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCompilable(String pattern) {
+        if (pattern.isEmpty() || pattern.charAt(0) != SEPARATOR) {
+            return false;
+        }
+        for (String segment : pattern.substring(1).split(String.valueOf(SEPARATOR), -1)) {
+            if (isVariable(segment)) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (name.isEmpty() || name.indexOf('{') != -1 || name.indexOf('}') != -1 || name.indexOf(':') != -1) {
+                    return false;
+                }
+            } else if (segment.indexOf('*') != -1 || segment.indexOf('?') != -1 || segment.indexOf('{') != -1 || segment.indexOf('}') != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isVariable(String segment) {
+        return segment.length() > 1 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    private static final class Node<T> {
+
+        /**
+         * literal children by segment, an open-addressing table probed linearly, at most half full, so that a region of
+         * the path can be looked up without turning it into a string. Hashes are those of {@link String#hashCode()}
+         */
+        private String[] literals = new String[4];
+        private Node<T>[] literalChildren = newNodes(4);
+        private int literalCount;
+        private Node<T> variableChild;
+        private Match<T> match;
+
+        private Node<T> addLiteral(String segment) {
+            Node<T> child = findLiteral(segment, 0, segment.length());
+            if (child != null) {
+                return child;
+            }
+            if ((literalCount + 1) * 2 > literals.length) {
+                String[] oldLiterals = literals;
+                Node<T>[] oldChildren = literalChildren;
+                literals = new String[oldLiterals.length * 2];
+                literalChildren = newNodes(oldLiterals.length * 2);
+                for (int i = 0; i < oldLiterals.length; i++) {
+                    if (oldLiterals[i] != null) {
+                        put(oldLiterals[i], oldChildren[i]);
+                    }
+                }
+            }
+            child = new Node<>();
+            put(segment, child);
+            literalCount++;
+            return child;
+        }
+
+        private void put(String segment, Node<T> child) {
+            int mask = literals.length - 1;
+            int i = spread(segment.hashCode()) & mask;
+            while (literals[i] != null) {
+                i = (i + 1) & mask;
+            }
+            literals[i] = segment;
+            literalChildren[i] = child;
+        }
+
+        /**
+         * @return the child for the segment of {@code path} from {@code start} to {@code end} (exclusive), {@code null}
+         * if there is none
+         */
+        private Node<T> findLiteral(String path, int start, int end) {
+            if (literalCount == 0) {
+                return null;
+            }
+            int length = end - start;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            int mask = literals.length - 1;
+            for (int i = spread(hash) & mask; literals[i] != null; i = (i + 1) & mask) {
+                String literal = literals[i];
+                if (literal.length() == length && literal.hashCode() == hash && literal.regionMatches(0, path, start, length)) {
+                    return literalChildren[i];
+                }
+            }
+            return null;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newNodes(int size) {
+            return (Node<T>[]) new Node<?>[size];
+        }
+    }
+
+    /**
+     * A compiled route.
+     *
+     * @param <T> routed value
+     */
+    public static final class Match<T> {
+        private final String pattern;
+        private final T value;
+        private final WsPathMatcher matcher;
+        private final String[] variableNames;
+
+        private Match(String pattern, T value, WsPathMatcher matcher, String[] variableNames) {
+            this.pattern = pattern;
+            this.value = value;
+            this.matcher = matcher;
+            this.variableNames = variableNames;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+}
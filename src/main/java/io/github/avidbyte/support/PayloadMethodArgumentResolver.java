@@ -0,0 +1,59 @@
+package io.github.avidbyte.support;
+
+import io.github.avidbyte.annotation.OnBinary;
+import io.github.avidbyte.annotation.OnMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.springframework.core.MethodParameter;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Resolves {@link ByteBuf}, {@link ByteBuffer}, {@link InputStream} and {@link CharSequence} parameters of
+ * {@link OnMessage} and {@link OnBinary} methods as views of the frame's buffer instead of copies.
+ * <p>
+ * The views are only valid until the method returns, the buffer is released right after. To use the payload later,
+ * keep {@code byteBuf.retain()} (and {@code release()} it when done) or copy it. The {@link ByteBuffer} is read-only
+ * and only copied when the buffer is made of several components. A {@link CharSequence} is decoded straight from the
+ * buffer, UTF-8 text can not be exposed without decoding it.
+ *
+ * @author Aaron
+ * @version 1.0
+ */
+public class PayloadMethodArgumentResolver implements MethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Method method = parameter.getMethod();
+        if (method == null) {
+            return false;
+        }
+        Class<?> type = parameter.getParameterType();
+        if (method.isAnnotationPresent(OnMessage.class) && CharSequence.class == type) {
+            return true;
+        }
+        return (method.isAnnotationPresent(OnMessage.class) || method.isAnnotationPresent(OnBinary.class))
+                && (ByteBuf.class == type || ByteBuffer.class == type || InputStream.class == type);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        ByteBuf content = ((WebSocketFrame) object).content();
+        Class<?> type = parameter.getParameterType();
+        if (ByteBuf.class == type) {
+            return content;
+        }
+        if (ByteBuffer.class == type) {
+            return content.nioBuffer().asReadOnlyBuffer();
+        }
+        if (InputStream.class == type) {
+            // own reader index, reading the stream does not consume the ByteBuf passed to the same method
+            return new ByteBufInputStream(content.duplicate());
+        }
+        return TextFragmentDecoder.decode(channel, (WebSocketFrame) object);
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.avidbyte.support;
+
+import io.github.avidbyte.standard.SessionRegistry;
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+/**
+ * Resolves the {@link SessionRegistry} of the endpoint, on any endpoint method.
+ *
+ * @author Aaron
+ * @version 1.0
+ */
+public class SessionRegistryMethodArgumentResolver implements MethodArgumentResolver {
+
+    private final SessionRegistry sessionRegistry;
+
+    public SessionRegistryMethodArgumentResolver(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return SessionRegistry.class == parameter.getParameterType();
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return sessionRegistry;
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.avidbyte.support;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.CorruptedWebSocketFrameException;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the text of a message, whole or, with stream-fragments, in fragments. A character may be split across two
+ * fragments, so the bytes of an incomplete character are kept for the next fragment of the connection. Text that is
+ * not valid UTF-8 fails with a {@link CorruptedWebSocketFrameException} carrying close code 1007, however the client
+ * framed it.
+ * <p>
+ * Callbacks of a connection run one at a time and in order, so the decoder of a connection is never used
+ * concurrently. The text of the last fragment is kept until {@link #messageHandled(Channel)}, several parameters of one
+ * method decode it only once.
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public final class TextFragmentDecoder {
+
+    private static final AttributeKey<TextFragmentDecoder> DECODER_KEY = AttributeKey.valueOf("WEBSOCKET_TEXT_FRAGMENT_DECODER");
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    /**
+     * bytes of a character the previous fragment ended in the middle of
+     */
+    private final byte[] pending = new byte[4];
+    private int pendingLength;
+
+    private WebSocketFrame lastFrame;
+    private String lastText;
+
+    private TextFragmentDecoder() {
+    }
+
+    /**
+     * @param channel channel the frame was read from
+     * @param frame   a complete text message, or a fragment of one
+     * @return the text of the frame, without the bytes of a character the next fragment completes
+     * @throws CorruptedWebSocketFrameException if the text is not valid UTF-8
+     */
+    public static String decode(Channel channel, WebSocketFrame frame) {
+        if (frame instanceof TextWebSocketFrame && frame.isFinalFragment()) {
+            // a whole message, nothing carries over, validated without a decoder
+            ByteBuf content = frame.content();
+            if (!ByteBufUtil.isText(content, StandardCharsets.UTF_8)) {
+                throw invalidText();
+            }
+            return content.toString(StandardCharsets.UTF_8);
+        }
+        Attribute<TextFragmentDecoder> attribute = channel.attr(DECODER_KEY);
+        TextFragmentDecoder decoder = attribute.get();
+        if (decoder == null) {
+            decoder = new TextFragmentDecoder();
+            attribute.set(decoder);
+        }
+        return decoder.decode(frame);
+    }
+
+    /**
+     * forget the frame whose text was kept for the parameters of one method, once the method has returned
+     *
+     * @param channel channel
+     */
+    public static void messageHandled(Channel channel) {
+        if (channel.hasAttr(DECODER_KEY)) {
+            TextFragmentDecoder decoder = channel.attr(DECODER_KEY).get();
+            if (decoder != null) {
+                decoder.lastFrame = null;
+                decoder.lastText = null;
+            }
+        }
+    }
+
+    private static CorruptedWebSocketFrameException invalidText() {
+        return new CorruptedWebSocketFrameException(WebSocketCloseStatus.INVALID_PAYLOAD_DATA, "Text message is not valid UTF-8");
+    }
+
+    private String decode(WebSocketFrame frame) {
+        if (frame == lastFrame) {
+            return lastText;
+        }
+        if (frame instanceof TextWebSocketFrame) {
+            // the first fragment of a message
+            decoder.reset();
+            pendingLength = 0;
+        }
+        ByteBuf content = frame.content();
+        ByteBuffer in;
+        if (pendingLength == 0) {
+            in = content.nioBuffer();
+        } else {
+            in = ByteBuffer.allocate(pendingLength + content.readableBytes());
+            in.put(pending, 0, pendingLength);
+            content.getBytes(content.readerIndex(), in);
+            in.flip();
+        }
+        boolean last = frame.isFinalFragment();
+        CharBuffer out = CharBuffer.allocate(in.remaining() + 1);
+        CoderResult result = decoder.decode(in, out, last);
+        if (!result.isError() && last) {
+            result = decoder.flush(out);
+        }
+        if (result.isError()) {
+            decoder.reset();
+            pendingLength = 0;
+            throw invalidText();
+        }
+        if (last) {
+            decoder.reset();
+            pendingLength = 0;
+        } else {
+            pendingLength = in.remaining();
+            in.get(pending, 0, pendingLength);
+        }
+        out.flip();
+        lastFrame = frame;
+        lastText = out.toString();
+        return lastText;
+    }
+}
@@ -1,7 +1,7 @@
 package io.github.avidbyte.support;
 
 import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.github.avidbyte.annotation.OnMessage;
 import org.springframework.core.MethodParameter;
 
@@ -19,7 +19,7 @@ public class TextMethodArgumentResolver implements MethodArgumentResolver {
 
     @Override
     public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
-        TextWebSocketFrame textFrame = (TextWebSocketFrame) object;
-        return textFrame.text();
+        // a TextWebSocketFrame, or a ContinuationWebSocketFrame of a text message with stream-fragments
+        return TextFragmentDecoder.decode(channel, (WebSocketFrame) object);
     }
 }
@@ -0,0 +1,30 @@
+package io.github.avidbyte.support;
+
+import io.github.avidbyte.standard.TopicRegistry;
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+/**
+ * Resolves the {@link TopicRegistry} of the endpoint, on any endpoint method.
+ *
+ * @author Aaron
+ * @version 1.0
+ */
+public class TopicRegistryMethodArgumentResolver implements MethodArgumentResolver {
+
+    private final TopicRegistry topicRegistry;
+
+    public TopicRegistryMethodArgumentResolver(TopicRegistry topicRegistry) {
+        this.topicRegistry = topicRegistry;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return TopicRegistry.class == parameter.getParameterType();
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return topicRegistry;
+    }
+}
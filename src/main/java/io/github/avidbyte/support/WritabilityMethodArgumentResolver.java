@@ -0,0 +1,27 @@
+package io.github.avidbyte.support;
+
+import io.github.avidbyte.annotation.OnWritabilityChanged;
+import io.netty.channel.Channel;
+import org.springframework.core.MethodParameter;
+
+import java.util.Objects;
+
+/**
+ * resolves the {@code boolean} parameter of {@link OnWritabilityChanged} to whether the connection is writable
+ *
+ * @author Aaron
+ * @since 1.0
+ */
+public class WritabilityMethodArgumentResolver implements MethodArgumentResolver {
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        return Objects.requireNonNull(parameter.getMethod()).isAnnotationPresent(OnWritabilityChanged.class)
+                && (boolean.class == type || Boolean.class == type);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Channel channel, Object object) throws Exception {
+        return object;
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.avidbyte.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Counts the threads of the websocket servers and the context switches they made.
+ *
+ * @author Aaron
+ */
+public final class ThreadStatsUtils {
+
+    /**
+     * prefix of every thread created by the websocket servers
+     */
+    public static final String THREAD_NAME_PREFIX = "netty-websocket-";
+
+    private static final Path PROC_TASKS = Paths.get("/proc/self/task");
+
+    /**
+     * linux truncates thread names to 15 characters in /proc
+     */
+    private static final String PROC_COMM_PREFIX = THREAD_NAME_PREFIX.substring(0, 15);
+
+    private ThreadStatsUtils() {
+    }
+
+    /**
+     * number of live threads owned by the websocket servers
+     *
+     * @return int
+     */
+    public static int threadCount() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(THREAD_NAME_PREFIX)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * voluntary plus involuntary context switches of the live websocket server threads, read from /proc
+     *
+     * @return long, {@code -1} if /proc is not available (non linux systems)
+     */
+    public static long contextSwitches() {
+        if (!Files.isDirectory(PROC_TASKS)) {
+            return -1;
+        }
+        long switches = 0;
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(PROC_TASKS)) {
+            for (Path task : tasks) {
+                try {
+                    String comm = new String(Files.readAllBytes(task.resolve("comm")), StandardCharsets.UTF_8);
+                    if (!comm.startsWith(PROC_COMM_PREFIX)) {
+                        continue;
+                    }
+                    for (String line : Files.readAllLines(task.resolve("status"), StandardCharsets.UTF_8)) {
+                        if (line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:")) {
+                            switches += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    // the thread exited while we were reading it
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return switches;
+    }
+}
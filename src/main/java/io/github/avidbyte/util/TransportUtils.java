@@ -0,0 +1,79 @@
+package io.github.avidbyte.util;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Selects the Netty transport (native epoll or NIO) for a websocket server.
+ *
+ * @author Aaron
+ */
+public final class TransportUtils {
+
+    public static final String AUTO = "auto";
+    public static final String NIO = "nio";
+    public static final String EPOLL = "epoll";
+
+    private static final boolean EPOLL_PRESENT = ClassUtils.isPresent("io.netty.channel.epoll.Epoll", TransportUtils.class.getClassLoader());
+
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(TransportUtils.class);
+
+    private TransportUtils() {
+    }
+
+    /**
+     * resolve the configured transport, falling back to nio when the native library can not be loaded
+     *
+     * @param transport auto, nio or epoll
+     * @return {@code true} if the epoll transport should be used
+     */
+    public static boolean useEpoll(String transport) {
+        String value = StringUtils.isEmpty(transport) ? AUTO : transport.trim().toLowerCase();
+        if (NIO.equals(value)) {
+            return false;
+        }
+        if (!AUTO.equals(value) && !EPOLL.equals(value)) {
+            throw new IllegalArgumentException("Unknown transport '" + transport + "', expected one of: auto, nio, epoll");
+        }
+        if (EPOLL_PRESENT && Epoll.isAvailable()) {
+            return true;
+        }
+        if (EPOLL.equals(value)) {
+            LOGGER.warn("epoll transport is not available, falling back to nio", EPOLL_PRESENT ? Epoll.unavailabilityCause() : null);
+        }
+        return false;
+    }
+
+    public static EventLoopGroup createEventLoopGroup(boolean epoll, int threads, ThreadFactory threadFactory) {
+        if (epoll) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+        return new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public static Class<? extends ServerChannel> serverChannelClass(boolean epoll) {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * allow several listening sockets to be bound to the same address, only supported by the epoll transport
+     *
+     * @param bootstrap bootstrap
+     */
+    public static void enableReusePort(ServerBootstrap bootstrap) {
+        bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+    }
+}
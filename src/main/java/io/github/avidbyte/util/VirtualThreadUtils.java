@@ -0,0 +1,42 @@
+package io.github.avidbyte.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads without requiring a JDK that has them at compile time.
+ *
+ * @author Aaron
+ */
+public final class VirtualThreadUtils {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private VirtualThreadUtils() {
+    }
+
+    /**
+     * @return {@code true} if the running JDK supports virtual threads
+     */
+    public static boolean isAvailable() {
+        return EXECUTOR != null;
+    }
+
+    /**
+     * executor that starts a new virtual thread for each task
+     *
+     * @return ExecutorService, {@code null} if virtual threads are not available
+     */
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK without virtual threads, or with them disabled as a preview feature
+            return null;
+        }
+    }
+}